@@ -0,0 +1,103 @@
+package org.example.bench;
+
+import org.example.codec.Codec;
+import org.example.codec.CodecContext;
+import org.example.codec.Codecs;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// compress:bytes and decompress:bytes report raw bytes per second; run with -prof gc for allocation rate
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+    private static final long SEED = 0x5EED;
+
+    @Param({"huffman", "shannon-fano", "lz77", "lzw", "deflate", "auto", "adaptive-huffman", "fse", "range-o0", "range-o1", "huffman-x4"})
+    public String codec;
+
+    @Param({"random", "text", "repetitive", "sparse"})
+    public String corpus;
+
+    @Param({"4096", "65536", "1048576", "16777216", "268435456"})
+    public int size;
+
+    private Codec instance;
+    private byte[] data;
+    private byte[][] encoded;
+
+    // each thread codes through its own context, which keeps tables and buffers between blocks
+    // the way the stream and container formats do
+    @State(Scope.Thread)
+    public static class Worker {
+        private CodecContext context;
+        private ByteArrayOutputStream sink;
+        private byte[] decoded;
+
+        @Setup(Level.Trial)
+        public void setup(CodecBenchmark benchmark) {
+            context = benchmark.instance.newContext();
+            decoded = new byte[benchmark.size];
+            sink = new ByteArrayOutputStream(2 * Math.min(benchmark.size, Codec.DEFAULT_BLOCK_SIZE));
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Bytes {
+        public long bytes;
+    }
+
+    // inputs are processed in codec-sized blocks, the way the stream and container formats use them
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        instance = Codecs.byName(codec);
+        data = Corpora.generate(corpus, size, SEED);
+        CodecContext context = instance.newContext();
+        ByteArrayOutputStream sink = new ByteArrayOutputStream(2 * Math.min(size, Codec.DEFAULT_BLOCK_SIZE));
+
+        encoded = new byte[blockCount()][];
+        for (int block = 0; block < encoded.length; block++) {
+            sink.reset();
+            context.encodeBlock(data, block * Codec.DEFAULT_BLOCK_SIZE, blockLength(block), sink);
+            encoded[block] = sink.toByteArray();
+        }
+    }
+
+    @Benchmark
+    public long compress(Worker worker, Bytes bytes) throws IOException {
+        long total = 0;
+        for (int block = 0; block < encoded.length; block++) {
+            worker.sink.reset();
+            worker.context.encodeBlock(data, block * Codec.DEFAULT_BLOCK_SIZE, blockLength(block), worker.sink);
+            total += worker.sink.size();
+        }
+        bytes.bytes += size;
+        return total;
+    }
+
+    @Benchmark
+    public void decompress(Worker worker, Bytes bytes, Blackhole blackhole) throws IOException {
+        for (int block = 0; block < encoded.length; block++) {
+            worker.context.decodeBlock(encoded[block], 0, encoded[block].length,
+                    worker.decoded, block * Codec.DEFAULT_BLOCK_SIZE, blockLength(block));
+        }
+        bytes.bytes += size;
+        blackhole.consume(worker.decoded);
+    }
+
+    private int blockCount() {
+        return (size + Codec.DEFAULT_BLOCK_SIZE - 1) / Codec.DEFAULT_BLOCK_SIZE;
+    }
+
+    private int blockLength(int block) {
+        return Math.min(Codec.DEFAULT_BLOCK_SIZE, size - block * Codec.DEFAULT_BLOCK_SIZE);
+    }
+}
@@ -0,0 +1,65 @@
+package org.example.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+// deterministic synthetic inputs, so runs on different machines compress the same bytes
+public class Corpora {
+    private static final String[] WORDS = (
+            "the of and to in is that for it as was with be by on not he this are or his from at which but have "
+            + "an they you were her she there been one all we their has would when if so no will more can its "
+            + "compression entropy symbol frequency dictionary window block stream decoder encoder table code "
+            + "kompresija entropija simbol rečnik prozor blok tok").split(" ");
+
+    public static byte[] generate(String corpus, int size, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[size];
+        switch (corpus) {
+            case "random" -> random.nextBytes(data);
+            case "text" -> text(data, random);
+            case "repetitive" -> repetitive(data, random);
+            case "sparse" -> sparse(data, random);
+            default -> throw new IllegalArgumentException("Unknown corpus: " + corpus);
+        }
+        return data;
+    }
+
+    // words drawn with a skewed distribution, so common words dominate as in natural text
+    private static void text(byte[] data, Random random) {
+        int position = 0, lineLength = 0;
+        while (position < data.length) {
+            double u = random.nextDouble();
+            byte[] word = WORDS[(int) (u * u * u * WORDS.length)].getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < word.length && position < data.length; i++) {
+                data[position++] = word[i];
+            }
+            lineLength += word.length + 1;
+            if (position < data.length) {
+                data[position++] = (byte) (lineLength > 72 ? '\n' : ' ');
+            }
+            if (lineLength > 72) {
+                lineLength = 0;
+            }
+        }
+    }
+
+    // a short random pattern repeated with an occasional mutated byte
+    private static void repetitive(byte[] data, Random random) {
+        byte[] pattern = new byte[64 + random.nextInt(960)];
+        random.nextBytes(pattern);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = random.nextInt(1000) == 0 ? (byte) random.nextInt(256) : pattern[i % pattern.length];
+        }
+    }
+
+    // little-endian ints, mostly zero, with small values in about one slot in twenty
+    private static void sparse(byte[] data, Random random) {
+        for (int i = 0; i + 4 <= data.length; i += 4) {
+            if (random.nextInt(20) == 0) {
+                int value = random.nextInt(1 << 12);
+                data[i] = (byte) value;
+                data[i + 1] = (byte) (value >>> 8);
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package org.example;
+
+import org.example.metrics.Metrics;
+import org.example.models.FrequencyTable;
+import org.example.util.BitReader;
+import org.example.util.BitWriter;
+import org.example.util.BoundedByteArrayOutputStream;
+import org.example.util.CanonicalCode;
+import org.example.util.ContentChecksums;
+import org.example.util.HuffmanDecoder;
+
+import java.io.*;
+import java.nio.file.Path;
+
+// one pass, no stored table: both sides start from the same flat counts and rebuild the
+// canonical code at the same points, so the decoder follows the encoder's statistics
+public class AdaptiveHuffmanAlgorithm {
+    public static final String NAME = "adaptive-huffman";
+    public static final int DEFAULT_INTERVAL_BITS = 14;
+    private static final int MIN_INTERVAL_BITS = 8;
+    private static final int MAX_INTERVAL_BITS = 24;
+    private static final int END_OF_STREAM = 256;
+    private static final int ALPHABET_SIZE = 257;
+    // early rebuilds come quickly, then the interval doubles up to 1 << intervalBits symbols
+    private static final int FIRST_INTERVAL = 1 << 9;
+    // counts are halved past this total, so the code keeps following changes in the data
+    private static final long MAX_TOTAL = 1 << 20;
+    private static final int CHUNK_SIZE = 8192;
+
+    public static void compress(String inputPath, String outputPath) throws IOException {
+        long begin = Metrics.start();
+        try (
+                InputStream in = new FileInputStream(inputPath);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputPath)))
+        ) {
+            // one pass: the checksums are taken as the encoder reads, and follow the compressed data
+            ContentChecksums.Collector checksums = new ContentChecksums.Collector();
+            compress(checksums.checking(in), out);
+            checksums.write(out);
+        }
+        Metrics.fileEncoded(NAME, inputPath, outputPath, begin);
+    }
+
+    public static void decompress(String inputPath, String outputPath) throws IOException {
+        long begin = Metrics.start();
+        ContentChecksums checksums = ContentChecksums.read(Path.of(inputPath));
+        try (
+                DataInputStream in = new DataInputStream(new BufferedInputStream(
+                        checksums.compressedData(new FileInputStream(inputPath))));
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(outputPath))
+        ) {
+            ContentChecksums.Verifier verifier = checksums.verifying(out);
+            decompress(in, verifier);
+            verifier.finish();
+        }
+        Metrics.fileDecoded(NAME, inputPath, outputPath, begin);
+    }
+
+    public static void compress(InputStream in, OutputStream out) throws IOException {
+        compress(in, out, DEFAULT_INTERVAL_BITS);
+    }
+
+    // reads the input exactly once, so it may be a stream that is still being produced
+    public static void compress(InputStream in, OutputStream out, int intervalBits) throws IOException {
+        if (intervalBits < MIN_INTERVAL_BITS || intervalBits > MAX_INTERVAL_BITS) {
+            throw new IllegalArgumentException("Rebuild interval must be between 2^" + MIN_INTERVAL_BITS
+                    + " and 2^" + MAX_INTERVAL_BITS + " symbols: 2^" + intervalBits);
+        }
+        out.write(intervalBits);
+        BitWriter writer = new BitWriter(out);
+        Model model = new Model(intervalBits, false);
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int n;
+        while ((n = in.read(chunk)) != -1) {
+            for (int i = 0; i < n; i++) {
+                model.encode(writer, chunk[i] & 0xFF);
+            }
+        }
+        model.encode(writer, END_OF_STREAM);
+        writer.flush();
+    }
+
+    public static void decompress(InputStream in, OutputStream out) throws IOException {
+        int intervalBits = in.read();
+        if (intervalBits < MIN_INTERVAL_BITS || intervalBits > MAX_INTERVAL_BITS) {
+            throw new IOException("Invalid rebuild interval: " + intervalBits);
+        }
+        BitReader reader = new BitReader(in);
+        Model model = new Model(intervalBits, true);
+        int symbol;
+        while ((symbol = model.decode(reader)) != END_OF_STREAM) {
+            out.write(symbol);
+        }
+    }
+
+    public static void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        compress(new ByteArrayInputStream(data, offset, length), out);
+    }
+
+    public static void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                                   byte[] dst, int dstOffset, int dstLength) throws IOException {
+        BoundedByteArrayOutputStream out = new BoundedByteArrayOutputStream(dst, dstOffset, dstLength);
+        decompress(new ByteArrayInputStream(src, srcOffset, srcLength), out);
+        if (out.size() != dstLength) {
+            throw new IOException("Adaptive Huffman block decoded to " + out.size() + " bytes, expected " + dstLength);
+        }
+    }
+
+    private static class Model {
+        private final FrequencyTable frequencyTable = new FrequencyTable(ALPHABET_SIZE);
+        private final int maxInterval;
+        private final boolean decoding;
+        private int interval = FIRST_INTERVAL;
+        private int untilRebuild;
+        private byte[] codeLengths;
+        private int[] codes;
+        private HuffmanDecoder decoder;
+
+        Model(int intervalBits, boolean decoding) throws IOException {
+            this.maxInterval = 1 << intervalBits;
+            this.decoding = decoding;
+            // every symbol starts with a count of one, so each has a code before it is first seen
+            for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+                frequencyTable.increment(symbol);
+            }
+            rebuild();
+        }
+
+        void encode(BitWriter writer, int symbol) throws IOException {
+            writer.writeBits(codes[symbol], codeLengths[symbol]);
+            update(symbol);
+        }
+
+        int decode(BitReader reader) throws IOException {
+            int symbol = decoder.decode(reader);
+            update(symbol);
+            return symbol;
+        }
+
+        private void update(int symbol) throws IOException {
+            frequencyTable.increment(symbol);
+            if (--untilRebuild == 0) {
+                rebuild();
+            }
+        }
+
+        private void rebuild() throws IOException {
+            if (frequencyTable.getTotalCounts() > MAX_TOTAL) {
+                for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+                    frequencyTable.add(symbol, -(frequencyTable.getCountForSymbol(symbol) / 2));
+                }
+            }
+            codeLengths = HuffmanAlgorithm.computeCodeLengths(frequencyTable);
+            codes = CanonicalCode.assignCodes(codeLengths);
+            if (decoding) {
+                decoder = new HuffmanDecoder(codes, codeLengths);
+            } else {
+                Metrics.codeLengths(NAME, codeLengths);
+            }
+            untilRebuild = interval;
+            interval = Math.min(interval << 1, maxInterval);
+        }
+    }
+}
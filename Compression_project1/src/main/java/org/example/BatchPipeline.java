@@ -0,0 +1,289 @@
+package org.example;
+
+import org.example.codec.Codec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+
+import static org.example.util.ByteUtil.checksum;
+
+// compresses every file under a directory, or matching a glob, on a fixed pool of workers; each file goes
+// through a compress stage and then a verify stage that decodes the output again, and both stages stream,
+// checksumming the data on the way through instead of holding it in memory
+public class BatchPipeline {
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    private final Codec codec;
+    private final int workers;
+    private final Path outputDir;
+
+    public BatchPipeline(Codec codec, int workers, Path outputDir) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("At least one worker is needed: " + workers);
+        }
+        this.codec = codec;
+        this.workers = workers;
+        this.outputDir = outputDir;
+    }
+
+    // input is a directory, taken whole, or a glob such as data/**/*.txt; output mirrors the tree under base
+    public Report run(String input) throws IOException, InterruptedException {
+        Path pattern = Path.of(input);
+        Path base;
+        PathMatcher matcher;
+        if (Files.isDirectory(pattern)) {
+            base = pattern;
+            matcher = path -> true;
+        } else {
+            // the segments before the first wildcard name the directory to walk, the rest is matched
+            // against paths relative to it; the last segment always belongs to the pattern
+            int literal = 0;
+            while (literal < pattern.getNameCount() - 1 && !hasWildcard(pattern.getName(literal))) {
+                literal++;
+            }
+            Path prefix = literal == 0 ? null : pattern.subpath(0, literal);
+            Path root = pattern.getRoot();
+            base = root == null ? (prefix == null ? Path.of(".") : prefix) : (prefix == null ? root : root.resolve(prefix));
+            matcher = FileSystems.getDefault().getPathMatcher(
+                    "glob:" + pattern.subpath(literal, pattern.getNameCount()));
+        }
+        Path skipped = outputDir.toAbsolutePath().normalize();
+
+        long start = System.nanoTime();
+        ConcurrentLinkedQueue<FileResult> results = new ConcurrentLinkedQueue<>();
+        // files enter the pipeline only while fewer than this many are between the two stages,
+        // so the walk never runs far ahead of the workers
+        int maxInFlight = 2 * workers;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        String walkError = null;
+        try (Stream<Path> walk = Files.walk(base)) {
+            Iterator<Path> files = walk
+                    .filter(path -> !path.toAbsolutePath().normalize().startsWith(skipped))
+                    .filter(Files::isRegularFile)
+                    .filter(path -> matcher.matches(base.relativize(path)))
+                    .iterator();
+            try {
+                while (files.hasNext()) {
+                    Path source = files.next();
+                    FileResult result = new FileResult(source, outputDir.resolve(base.relativize(source) + "." + codec.getName()));
+                    inFlight.acquire();
+                    CompletableFuture.runAsync(() -> compress(result), pool)
+                            .thenRunAsync(() -> verify(result), pool)
+                            .whenComplete((ignored, error) -> {
+                                if (error != null) {
+                                    result.fail(error instanceof CompletionException ? error.getCause() : error);
+                                }
+                                results.add(result);
+                                inFlight.release();
+                            });
+                }
+            } catch (UncheckedIOException e) {
+                // a directory that cannot be read ends the walk; the files already started still finish
+                // and the report says why the rest are missing
+                walkError = describe(e.getCause());
+            }
+            inFlight.acquire(maxInFlight);
+        } finally {
+            pool.shutdown();
+        }
+
+        List<FileResult> sorted = new ArrayList<>(results);
+        sorted.sort(Comparator.comparing(result -> result.source.toString()));
+        return new Report(codec, workers, sorted, walkError, System.nanoTime() - start);
+    }
+
+    private void compress(FileResult result) {
+        long start = System.nanoTime();
+        CRC32C crc = new CRC32C();
+        try {
+            Files.createDirectories(result.target.toAbsolutePath().getParent());
+            try (
+                    InputStream in = new CheckedInputStream(Files.newInputStream(result.source), crc);
+                    OutputStream out = codec.newOutputStream(new BufferedOutputStream(Files.newOutputStream(result.target)))
+            ) {
+                result.bytesIn = in.transferTo(out);
+            }
+            result.bytesOut = Files.size(result.target);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        result.checksum = crc.getValue();
+        result.compressNanos = System.nanoTime() - start;
+    }
+
+    private void verify(FileResult result) {
+        long start = System.nanoTime();
+        CRC32C crc = new CRC32C();
+        long length;
+        try (InputStream in = codec.newInputStream(new BufferedInputStream(Files.newInputStream(result.target)))) {
+            length = checksum(in, crc);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        result.verifyNanos = System.nanoTime() - start;
+        result.verified = length == result.bytesIn && crc.getValue() == result.checksum;
+    }
+
+    private static boolean hasWildcard(Path segment) {
+        return segment.toString().chars().anyMatch(c -> GLOB_CHARACTERS.indexOf(c) >= 0);
+    }
+
+    private static String describe(Throwable error) {
+        return error.getClass().getSimpleName() + ": " + error.getMessage();
+    }
+
+    public static class FileResult {
+        private final Path source;
+        private final Path target;
+        private long bytesIn;
+        private long bytesOut;
+        private long checksum;
+        private long compressNanos;
+        private long verifyNanos;
+        private boolean verified;
+        private String error;
+
+        private FileResult(Path source, Path target) {
+            this.source = source;
+            this.target = target;
+        }
+
+        private void fail(Throwable error) {
+            if (error instanceof UncheckedIOException) {
+                error = error.getCause();
+            }
+            this.error = describe(error);
+        }
+
+        public Path getSource() {
+            return source;
+        }
+
+        public boolean isVerified() {
+            return error == null && verified;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        private String status() {
+            return error != null ? "error" : verified ? "ok" : "mismatch";
+        }
+    }
+
+    public static class Report {
+        private final Codec codec;
+        private final int workers;
+        private final List<FileResult> files;
+        // why the directory walk stopped early, or null when it saw every file
+        private final String walkError;
+        private final long wallNanos;
+
+        private Report(Codec codec, int workers, List<FileResult> files, String walkError, long wallNanos) {
+            this.codec = codec;
+            this.workers = workers;
+            this.files = files;
+            this.walkError = walkError;
+            this.wallNanos = wallNanos;
+        }
+
+        public List<FileResult> getFiles() {
+            return files;
+        }
+
+        public String getWalkError() {
+            return walkError;
+        }
+
+        public int getFailed() {
+            return (int) files.stream().filter(file -> !file.isVerified()).count();
+        }
+
+        public long getBytesIn() {
+            return files.stream().mapToLong(file -> file.bytesIn).sum();
+        }
+
+        public long getBytesOut() {
+            return files.stream().mapToLong(file -> file.bytesOut).sum();
+        }
+
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        public String toJson() {
+            long bytesIn = getBytesIn(), bytesOut = getBytesOut();
+            StringBuilder json = new StringBuilder("{");
+            json.append("\"codec\":").append(quote(codec.getName()));
+            json.append(",\"workers\":").append(workers);
+            json.append(",\"files\":").append(files.size());
+            json.append(",\"failed\":").append(getFailed());
+            json.append(",\"bytesIn\":").append(bytesIn);
+            json.append(",\"bytesOut\":").append(bytesOut);
+            json.append(",\"compressionRatio\":").append(bytesIn == 0 ? 0 : (double) bytesOut / bytesIn);
+            json.append(",\"compressNanos\":").append(files.stream().mapToLong(file -> file.compressNanos).sum());
+            json.append(",\"verifyNanos\":").append(files.stream().mapToLong(file -> file.verifyNanos).sum());
+            json.append(",\"wallNanos\":").append(wallNanos);
+            json.append(",\"bytesPerSecond\":").append(wallNanos == 0 ? 0 : (long) (bytesIn * 1e9 / wallNanos));
+            if (walkError != null) {
+                json.append(",\"walkError\":").append(quote(walkError));
+            }
+            json.append(",\"results\":[");
+            String separator = "";
+            for (FileResult file : files) {
+                json.append(separator).append('{');
+                json.append("\"path\":").append(quote(file.source.toString()));
+                json.append(",\"output\":").append(quote(file.target.toString()));
+                json.append(",\"status\":").append(quote(file.status()));
+                json.append(",\"bytesIn\":").append(file.bytesIn);
+                json.append(",\"bytesOut\":").append(file.bytesOut);
+                json.append(",\"crc32c\":").append(quote(String.format("%08x", file.checksum)));
+                json.append(",\"compressNanos\":").append(file.compressNanos);
+                json.append(",\"verifyNanos\":").append(file.verifyNanos);
+                if (file.error != null) {
+                    json.append(",\"error\":").append(quote(file.error));
+                }
+                json.append('}');
+                separator = ",";
+            }
+            return json.append("]}").toString();
+        }
+
+        private static String quote(String value) {
+            StringBuilder quoted = new StringBuilder("\"");
+            for (char c : value.toCharArray()) {
+                if (c == '"' || c == '\\') {
+                    quoted.append('\\').append(c);
+                } else if (c < 0x20) {
+                    quoted.append(String.format("\\u%04x", (int) c));
+                } else {
+                    quoted.append(c);
+                }
+            }
+            return quoted.append('"').toString();
+        }
+    }
+}
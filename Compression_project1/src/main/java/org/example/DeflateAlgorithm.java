@@ -0,0 +1,383 @@
+package org.example;
+
+import org.example.metrics.Metrics;
+import org.example.metrics.Phase;
+import org.example.models.FrequencyTable;
+import org.example.models.Token;
+import org.example.models.TokenSink;
+import org.example.util.BitReader;
+import org.example.util.BitWriter;
+import org.example.util.BoundedByteArrayOutputStream;
+import org.example.util.CanonicalCode;
+import org.example.util.ContentChecksums;
+import org.example.util.HashChainMatchFinder;
+import org.example.util.HuffmanDecoder;
+import org.example.util.MappedFile;
+import org.example.util.SlidingWindow;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.example.util.ByteUtil.readVarInt;
+import static org.example.util.ByteUtil.writeVarInt;
+
+// LZ77 tokens coded with two Huffman alphabets: literals and match lengths share one, offsets have their own.
+// Lengths and offsets are sent as a bucket code plus extra bits, as in Deflate.
+public class DeflateAlgorithm {
+    public static final String NAME = "deflate";
+    private static final int LITERALS = 256;
+    private static final int LENGTH_CODES = 28;
+    private static final int OFFSET_CODES = 40;
+    // tokens per block; each block gets its own code tables
+    private static final int BLOCK_TOKENS = 1 << 16;
+
+    public static void compress(String inputPath, String outputPath) throws IOException {
+        compress(inputPath, outputPath, LZ77Algorithm.DEFAULT_WINDOW_SIZE, LZ77Algorithm.DEFAULT_LEVEL);
+    }
+
+    // file layout: window size, then blocks of [raw length][encoded length][tables][codes] up to a zero raw length;
+    // matches may reach back into earlier blocks
+    public static void compress(String inputPath, String outputPath, int windowSize, int level) throws IOException {
+        if (windowSize > LZ77Algorithm.MAX_WINDOW_SIZE) {
+            throw new IllegalArgumentException("Window size exceeds " + LZ77Algorithm.MAX_WINDOW_SIZE + ": " + windowSize);
+        }
+        if (level < 1 || level > LZ77Algorithm.OPTIMAL_LEVEL) {
+            throw new IllegalArgumentException("Compression level must be between 1 and "
+                    + LZ77Algorithm.OPTIMAL_LEVEL + ": " + level);
+        }
+        long begin = Metrics.start();
+        try (
+                MappedFile input = new MappedFile(Path.of(inputPath));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputPath)))
+        ) {
+            ContentChecksums.Collector checksums = new ContentChecksums.Collector();
+            out.writeInt(windowSize);
+            List<Token> tokens = new ArrayList<>(BLOCK_TOKENS);
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            int[] matchLengths = Metrics.isEnabled() ? new int[LZ77Algorithm.MAX_MATCH + 1] : null;
+            TokenSink sink = LZ77Algorithm.counting(token -> {
+                tokens.add(token);
+                if (tokens.size() == BLOCK_TOKENS) {
+                    writeBlock(out, tokens, encoded);
+                }
+            }, matchLengths);
+            // the optimal parse prices tokens with this format's codes, learned from the tokens before
+            OptimalParser parser = level == LZ77Algorithm.OPTIMAL_LEVEL
+                    ? new OptimalParser(windowSize, new CodePrices(), true) : null;
+            for (long start = 0; start < input.size(); start += input.getSegmentSize()) {
+                long historyStart = Math.max(0, start - windowSize);
+                int history = (int) (start - historyStart);
+                int length = (int) Math.min(input.getSegmentSize(), input.size() - start);
+                ByteBuffer data = input.map(historyStart, history + length);
+                checksums.update(data.slice(history, length));
+                if (parser != null) {
+                    parser.parse(data, history, history + length, sink);
+                } else {
+                    LZ77Algorithm.tokenize(data, history, history + length, windowSize, level, sink);
+                }
+            }
+            if (!tokens.isEmpty()) {
+                writeBlock(out, tokens, encoded);
+            }
+            Metrics.matchLengths(NAME, matchLengths);
+            writeVarInt(out, 0);
+            checksums.write(out);
+        }
+        Metrics.fileEncoded(NAME, inputPath, outputPath, begin);
+    }
+
+    public static void decompress(String inputPath, String outputPath) throws IOException {
+        long begin = Metrics.start();
+        ContentChecksums checksums = ContentChecksums.read(Path.of(inputPath));
+        try (
+                DataInputStream dis = new DataInputStream(new BufferedInputStream(
+                        checksums.compressedData(new FileInputStream(inputPath))));
+                FileOutputStream fos = new FileOutputStream(outputPath)
+        ) {
+            ContentChecksums.Verifier verifier = checksums.verifying(fos);
+            int windowSize = dis.readInt();
+            if (Integer.bitCount(windowSize) != 1 || windowSize > LZ77Algorithm.MAX_WINDOW_SIZE) {
+                throw new IOException("Invalid window size: " + windowSize);
+            }
+            SlidingWindow window = new SlidingWindow(verifier, windowSize);
+            long fileSize = Files.size(Path.of(inputPath));
+
+            int rawLength;
+            byte[] encoded = new byte[0];
+            while ((rawLength = readVarInt(dis)) != 0) {
+                int encodedLength = readVarInt(dis);
+                // checked before allocating: no block is longer than the file holding it
+                if (encodedLength < 0 || encodedLength > fileSize) {
+                    throw new IOException("Invalid Deflate block length: " + encodedLength);
+                }
+                if (encodedLength > encoded.length) {
+                    encoded = new byte[encodedLength];
+                }
+                dis.readFully(encoded, 0, encodedLength);
+                decodeTokens(encoded, 0, encodedLength, rawLength, window);
+            }
+            window.flush();
+            verifier.finish();
+        }
+        Metrics.fileDecoded(NAME, inputPath, outputPath, begin);
+    }
+
+    public static void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        long start = Metrics.start();
+        List<Token> tokens = new ArrayList<>();
+        int[] matchLengths = Metrics.isEnabled() ? new int[LZ77Algorithm.MAX_MATCH + 1] : null;
+        LZ77Algorithm.tokenize(ByteBuffer.wrap(data, offset, length).slice(), 0, length,
+                LZ77Algorithm.DEFAULT_WINDOW_SIZE, LZ77Algorithm.DEFAULT_LEVEL,
+                LZ77Algorithm.counting(tokens::add, matchLengths));
+        Metrics.matchLengths(NAME, matchLengths);
+        encodeTokens(tokens, out, start);
+    }
+
+    public static void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                                   byte[] dst, int dstOffset, int dstLength) throws IOException {
+        BoundedByteArrayOutputStream out = new BoundedByteArrayOutputStream(dst, dstOffset, dstLength);
+        SlidingWindow window = new SlidingWindow(out, LZ77Algorithm.DEFAULT_WINDOW_SIZE);
+        decodeTokens(src, srcOffset, srcLength, dstLength, window);
+        window.flush();
+        if (out.size() != dstLength) {
+            throw new IOException("Deflate block decoded to " + out.size() + " bytes, expected " + dstLength);
+        }
+    }
+
+    private static void writeBlock(DataOutputStream out, List<Token> tokens, ByteArrayOutputStream encoded)
+            throws IOException {
+        int rawLength = 0;
+        for (Token token : tokens) {
+            rawLength += token.getLength() + (token.hasSymbol() ? 1 : 0);
+        }
+        encoded.reset();
+        encodeTokens(tokens, encoded, Metrics.start());
+        writeVarInt(out, rawLength);
+        writeVarInt(out, encoded.size());
+        encoded.writeTo(out);
+        tokens.clear();
+    }
+
+    // modeling time is counted from start, which lets callers include their tokenizing
+    private static void encodeTokens(List<Token> tokens, OutputStream out, long start) throws IOException {
+        FrequencyTable literalLengths = new FrequencyTable(LITERALS + LENGTH_CODES);
+        FrequencyTable offsets = new FrequencyTable(OFFSET_CODES);
+        for (Token token : tokens) {
+            if (token.getLength() > 0) {
+                literalLengths.increment(LITERALS + lengthCode(token.getLength()));
+                offsets.increment(offsetCode(token.getOffset()));
+            }
+            if (token.hasSymbol()) {
+                literalLengths.increment(token.getSymbol());
+            }
+        }
+        byte[] literalLengthLengths = HuffmanAlgorithm.computeCodeLengths(literalLengths);
+        byte[] offsetLengths = HuffmanAlgorithm.computeCodeLengths(offsets);
+        int[] literalLengthCodes = CanonicalCode.assignCodes(literalLengthLengths);
+        int[] offsetCodes = CanonicalCode.assignCodes(offsetLengths);
+        Metrics.codeLengths(NAME, literalLengthLengths);
+        Metrics.codeLengths(NAME, offsetLengths);
+        Metrics.phase(NAME, Phase.MODELING, start);
+
+        start = Metrics.start();
+        writeCodeLengths(out, literalLengthLengths);
+        writeCodeLengths(out, offsetLengths);
+
+        BitWriter writer = new BitWriter(out);
+        for (Token token : tokens) {
+            int length = token.getLength();
+            if (length > 0) {
+                int code = lengthCode(length);
+                writer.writeBits(literalLengthCodes[LITERALS + code], literalLengthLengths[LITERALS + code]);
+                int extra = lengthExtraBits(code);
+                writer.writeBits(length - lengthBase(code), extra);
+
+                code = offsetCode(token.getOffset());
+                writer.writeBits(offsetCodes[code], offsetLengths[code]);
+                extra = offsetExtraBits(code);
+                writer.writeBits(token.getOffset() - offsetBase(code), extra);
+            }
+            if (token.hasSymbol()) {
+                int symbol = token.getSymbol();
+                writer.writeBits(literalLengthCodes[symbol], literalLengthLengths[symbol]);
+            }
+        }
+        writer.flush();
+        Metrics.phase(NAME, Phase.BIT_OUTPUT, start);
+    }
+
+    private static void decodeTokens(byte[] src, int srcOffset, int srcLength, int rawLength, SlidingWindow window)
+            throws IOException {
+        ByteArrayInputStream in = new ByteArrayInputStream(src, srcOffset, srcLength);
+        byte[] literalLengthLengths = readCodeLengths(in, LITERALS + LENGTH_CODES);
+        byte[] offsetLengths = readCodeLengths(in, OFFSET_CODES);
+        if (rawLength == 0) {
+            return;
+        }
+        HuffmanDecoder literalLengthDecoder = HuffmanDecoder.canonical(literalLengthLengths);
+        HuffmanDecoder offsetDecoder = CanonicalCode.maxLength(offsetLengths) > 0
+                ? HuffmanDecoder.canonical(offsetLengths) : null;
+        int headerLength = srcLength - in.available();
+        BitReader reader = new BitReader(src, srcOffset + headerLength, srcLength - headerLength);
+
+        long end = window.size() + rawLength;
+        while (window.size() < end) {
+            int symbol = literalLengthDecoder.decode(reader);
+            if (symbol < LITERALS) {
+                window.write(symbol);
+                continue;
+            }
+            if (offsetDecoder == null) {
+                throw new IOException("Match in a block without offset codes");
+            }
+            int code = symbol - LITERALS;
+            int length = lengthBase(code) + reader.readBits(lengthExtraBits(code));
+            code = offsetDecoder.decode(reader);
+            int offset = offsetBase(code) + reader.readBits(offsetExtraBits(code));
+            if (length > end - window.size()) {
+                throw new IOException("Match runs past the end of the block");
+            }
+            window.copy(offset, length);
+        }
+    }
+
+    // a count of the lengths that follow, then two 4-bit lengths per byte; trailing unused symbols are omitted
+    private static void writeCodeLengths(OutputStream out, byte[] codeLengths) throws IOException {
+        int count = codeLengths.length;
+        while (count > 0 && codeLengths[count - 1] == 0) {
+            count--;
+        }
+        writeVarInt(out, count);
+        for (int i = 0; i < count; i += 2) {
+            int low = i + 1 < count ? codeLengths[i + 1] : 0;
+            out.write((codeLengths[i] << 4) | low);
+        }
+    }
+
+    private static byte[] readCodeLengths(InputStream in, int alphabetSize) throws IOException {
+        int count = readVarInt(in);
+        if (count > alphabetSize) {
+            throw new IOException("Code table of " + count + " symbols exceeds alphabet of " + alphabetSize);
+        }
+        byte[] codeLengths = new byte[alphabetSize];
+        for (int i = 0; i < count; i += 2) {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Truncated code table");
+            }
+            codeLengths[i] = (byte) (b >>> 4);
+            if (i + 1 < count) {
+                codeLengths[i + 1] = (byte) (b & 0x0F);
+            }
+        }
+        return codeLengths;
+    }
+
+    // match lengths 3..258: eight exact codes, then four codes per power of two
+    private static int lengthCode(int length) {
+        int v = length - HashChainMatchFinder.MIN_MATCH;
+        if (v < 8) {
+            return v;
+        }
+        int n = 31 - Integer.numberOfLeadingZeros(v);
+        return 4 * n - 4 + ((v >>> (n - 2)) & 3);
+    }
+
+    private static int lengthExtraBits(int code) {
+        return code < 8 ? 0 : (code >> 2) - 1;
+    }
+
+    private static int lengthBase(int code) {
+        int v = code < 8 ? code : (4 + (code & 3)) << ((code >> 2) - 1);
+        return v + HashChainMatchFinder.MIN_MATCH;
+    }
+
+    // offsets 1..2^20: four exact codes, then two codes per power of two
+    private static int offsetCode(int offset) {
+        int v = offset - 1;
+        if (v < 4) {
+            return v;
+        }
+        int n = 31 - Integer.numberOfLeadingZeros(v);
+        return 2 * n + ((v >>> (n - 1)) & 1);
+    }
+
+    private static int offsetExtraBits(int code) {
+        return code < 4 ? 0 : (code >> 1) - 1;
+    }
+
+    private static int offsetBase(int code) {
+        int v = code < 4 ? code : (2 + (code & 1)) << ((code >> 1) - 1);
+        return v + 1;
+    }
+
+    // code lengths the tokens parsed so far would get, as prices for the next chunk; the counts decay so the
+    // prices follow the data, and start out from the literals of the first chunk
+    private static class CodePrices implements OptimalParser.CostModel {
+        private final long[] literalLengthCounts = new long[LITERALS + LENGTH_CODES];
+        private final long[] offsetCounts = new long[OFFSET_CODES];
+        private final int[] literalLengthPrices = new int[LITERALS + LENGTH_CODES];
+        private final int[] offsetPrices = new int[OFFSET_CODES];
+        private final int[] matchLengthPrices = new int[LZ77Algorithm.MAX_MATCH + 1];
+        private boolean seeded;
+
+        @Override
+        public void prepare(ByteBuffer data, int start, int end) {
+            if (!seeded) {
+                for (int i = start; i < end; i++) {
+                    literalLengthCounts[data.get(i) & 0xFF]++;
+                }
+                seeded = true;
+            }
+            // every symbol stays possible, so each one gets a code
+            toPrices(literalLengthCounts, literalLengthPrices);
+            toPrices(offsetCounts, offsetPrices);
+            for (int length = HashChainMatchFinder.MIN_MATCH; length <= LZ77Algorithm.MAX_MATCH; length++) {
+                int code = lengthCode(length);
+                matchLengthPrices[length] = literalLengthPrices[LITERALS + code] + lengthExtraBits(code);
+            }
+            for (int i = 0; i < literalLengthCounts.length; i++) {
+                literalLengthCounts[i] >>>= 1;
+            }
+            for (int i = 0; i < offsetCounts.length; i++) {
+                offsetCounts[i] >>>= 1;
+            }
+        }
+
+        @Override
+        public int price(int length, int offset, int symbol) {
+            int price = 0;
+            if (length > 0) {
+                int code = offsetCode(offset);
+                price = matchLengthPrices[length] + offsetPrices[code] + offsetExtraBits(code);
+            }
+            return symbol == Token.NO_SYMBOL ? price : price + literalLengthPrices[symbol];
+        }
+
+        @Override
+        public void update(Token token) {
+            if (token.getLength() > 0) {
+                literalLengthCounts[LITERALS + lengthCode(token.getLength())]++;
+                offsetCounts[offsetCode(token.getOffset())]++;
+            }
+            if (token.hasSymbol()) {
+                literalLengthCounts[token.getSymbol()]++;
+            }
+        }
+
+        private static void toPrices(long[] counts, int[] prices) {
+            FrequencyTable smoothed = new FrequencyTable(counts.length);
+            for (int i = 0; i < counts.length; i++) {
+                smoothed.add(i, counts[i] + 1);
+            }
+            byte[] lengths = HuffmanAlgorithm.computeCodeLengths(smoothed);
+            for (int i = 0; i < prices.length; i++) {
+                prices[i] = lengths[i];
+            }
+        }
+    }
+}
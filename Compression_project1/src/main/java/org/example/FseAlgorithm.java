@@ -0,0 +1,238 @@
+package org.example;
+
+import org.example.metrics.Metrics;
+import org.example.metrics.Phase;
+import org.example.models.FrequencyTable;
+import org.example.util.BitReader;
+import org.example.util.BitWriter;
+import org.example.util.ContentChecksums;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.example.util.ByteUtil.readVarInt;
+import static org.example.util.ByteUtil.writeVarInt;
+import static org.example.util.EntropyCalculator.calculateFrequency;
+
+// table-driven asymmetric numeral system coder (tANS, as in FSE). Counts are normalized to TABLE_SIZE slots
+// and a symbol with n slots costs close to log2(TABLE_SIZE / n) bits, which can be well below one bit.
+public class FseAlgorithm {
+    public static final String NAME = "fse";
+    private static final int TABLE_LOG = 11;
+    private static final int TABLE_SIZE = 1 << TABLE_LOG;
+    // input per block in the file format; each block gets its own table
+    private static final int BLOCK_SIZE = 1 << 17;
+
+    // file layout: blocks of [raw length][encoded length][block] up to a zero raw length
+    public static void compress(String inputPath, String outputPath) throws IOException {
+        long begin = Metrics.start();
+        ContentChecksums.Collector checksums = new ContentChecksums.Collector();
+        try (
+                InputStream in = checksums.checking(new FileInputStream(inputPath));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputPath)))
+        ) {
+            byte[] block = new byte[BLOCK_SIZE];
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            int n;
+            while ((n = in.readNBytes(block, 0, BLOCK_SIZE)) > 0) {
+                encoded.reset();
+                encodeBlock(block, 0, n, encoded);
+                writeVarInt(out, n);
+                writeVarInt(out, encoded.size());
+                encoded.writeTo(out);
+            }
+            writeVarInt(out, 0);
+            checksums.write(out);
+        }
+        Metrics.fileEncoded(NAME, inputPath, outputPath, begin);
+    }
+
+    public static void decompress(String inputPath, String outputPath) throws IOException {
+        long begin = Metrics.start();
+        ContentChecksums checksums = ContentChecksums.read(Path.of(inputPath));
+        try (
+                DataInputStream dis = new DataInputStream(new BufferedInputStream(
+                        checksums.compressedData(new FileInputStream(inputPath))));
+                BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(outputPath))
+        ) {
+            ContentChecksums.Verifier verifier = checksums.verifying(bos);
+            long fileSize = Files.size(Path.of(inputPath));
+            byte[] block = new byte[BLOCK_SIZE];
+            byte[] encoded = new byte[0];
+            int rawLength;
+            while ((rawLength = readVarInt(dis)) != 0) {
+                if (rawLength < 0 || rawLength > BLOCK_SIZE) {
+                    throw new IOException("Invalid FSE block length: " + rawLength);
+                }
+                int encodedLength = readVarInt(dis);
+                // checked before allocating: no block is longer than the file holding it
+                if (encodedLength < 0 || encodedLength > fileSize) {
+                    throw new IOException("Invalid FSE encoded length: " + encodedLength);
+                }
+                if (encodedLength > encoded.length) {
+                    encoded = new byte[encodedLength];
+                }
+                dis.readFully(encoded, 0, encodedLength);
+                decodeBlock(encoded, 0, encodedLength, block, 0, rawLength);
+                verifier.write(block, 0, rawLength);
+            }
+            verifier.finish();
+        }
+        Metrics.fileDecoded(NAME, inputPath, outputPath, begin);
+    }
+
+    public static void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        long start = Metrics.start();
+        int[] normalized = normalize(calculateFrequency(data, offset, length), length);
+        int[] cumulative = new int[257];
+        for (int symbol = 0; symbol < 256; symbol++) {
+            cumulative[symbol + 1] = cumulative[symbol] + normalized[symbol];
+        }
+
+        // stateTable lists each symbol's states in table order; a state x in [TABLE_SIZE, 2 * TABLE_SIZE)
+        // sheds nbBits low bits, chosen so that x >> nbBits falls in [n, 2n) for a symbol with n slots
+        int[] stateTable = new int[TABLE_SIZE];
+        int[] next = cumulative.clone();
+        int[] spread = spread(normalized);
+        for (int u = 0; u < TABLE_SIZE; u++) {
+            stateTable[next[spread[u]]++] = TABLE_SIZE + u;
+        }
+        int[] deltaNbBits = new int[256];
+        int[] deltaFindState = new int[256];
+        for (int symbol = 0; symbol < 256; symbol++) {
+            int n = normalized[symbol];
+            if (n > 0) {
+                int maxBitsOut = n == 1 ? TABLE_LOG : TABLE_LOG - (31 - Integer.numberOfLeadingZeros(n - 1));
+                deltaNbBits[symbol] = (maxBitsOut << 16) - (n << maxBitsOut);
+                deltaFindState[symbol] = cumulative[symbol] - n;
+            }
+        }
+        Metrics.phase(NAME, Phase.MODELING, start);
+
+        // symbols are coded last to first so that they decode first to last; the bits of each step
+        // are kept as (bits << 4 | count) and written out in decoding order
+        start = Metrics.start();
+        int[] emitted = new int[length];
+        int state = TABLE_SIZE;
+        for (int i = length - 1; i >= 0; i--) {
+            int symbol = data[offset + i] & 0xFF;
+            int nbBits = (state + deltaNbBits[symbol]) >>> 16;
+            emitted[i] = (state & ((1 << nbBits) - 1)) << 4 | nbBits;
+            state = stateTable[(state >> nbBits) + deltaFindState[symbol]];
+        }
+
+        BitWriter writer = new BitWriter(out);
+        writeTable(writer, normalized);
+        writer.writeBits(state - TABLE_SIZE, TABLE_LOG);
+        for (int bits : emitted) {
+            writer.writeBits(bits >>> 4, bits & 0x0F);
+        }
+        writer.flush();
+        Metrics.phase(NAME, Phase.BIT_OUTPUT, start);
+    }
+
+    public static void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                                   byte[] dst, int dstOffset, int dstLength) throws IOException {
+        if (dstLength == 0) {
+            return;
+        }
+        BitReader reader = new BitReader(src, srcOffset, srcLength);
+        int[] normalized = readTable(reader);
+
+        // entry: next state base << 16 | bits to read << 8 | symbol
+        int[] table = new int[TABLE_SIZE];
+        int[] next = normalized.clone();
+        int[] spread = spread(normalized);
+        for (int u = 0; u < TABLE_SIZE; u++) {
+            int symbol = spread[u];
+            int x = next[symbol]++;
+            int nbBits = TABLE_LOG - (31 - Integer.numberOfLeadingZeros(x));
+            table[u] = ((x << nbBits) - TABLE_SIZE) << 16 | nbBits << 8 | symbol;
+        }
+
+        int state = reader.readBits(TABLE_LOG);
+        for (int i = dstOffset, end = dstOffset + dstLength; i < end; i++) {
+            int entry = table[state];
+            dst[i] = (byte) entry;
+            state = (entry >>> 16) + reader.readBits((entry >>> 8) & 0xFF);
+        }
+    }
+
+    // scales counts to TABLE_SIZE, keeping one slot for every symbol that occurs; rounding errors are
+    // settled one slot at a time where moving it costs the fewest bits
+    static int[] normalize(FrequencyTable frequencyTable, long total) {
+        int[] normalized = new int[256];
+        int sum = 0;
+        for (int symbol = 0; symbol < 256; symbol++) {
+            long count = frequencyTable.getCountForSymbol(symbol);
+            if (count > 0) {
+                normalized[symbol] = (int) Math.max(1, Math.round((double) count * TABLE_SIZE / total));
+                sum += normalized[symbol];
+            }
+        }
+        while (sum != TABLE_SIZE) {
+            int step = sum > TABLE_SIZE ? -1 : 1;
+            int best = -1;
+            double bestCost = Double.MAX_VALUE;
+            for (int symbol = 0; symbol < 256; symbol++) {
+                int n = normalized[symbol];
+                if (n == 0 || n + step == 0) {
+                    continue;
+                }
+                double cost = frequencyTable.getCountForSymbol(symbol) * Math.log((double) n / (n + step));
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    best = symbol;
+                }
+            }
+            normalized[best] += step;
+            sum += step;
+        }
+        return normalized;
+    }
+
+    // spreads each symbol's slots over the table with an odd step, which visits every slot once
+    private static int[] spread(int[] normalized) {
+        int[] symbols = new int[TABLE_SIZE];
+        int step = (TABLE_SIZE >>> 1) + (TABLE_SIZE >>> 3) + 3;
+        int position = 0;
+        for (int symbol = 0; symbol < 256; symbol++) {
+            for (int k = 0; k < normalized[symbol]; k++) {
+                symbols[position] = symbol;
+                position = (position + step) & (TABLE_SIZE - 1);
+            }
+        }
+        return symbols;
+    }
+
+    // one presence bit per symbol, followed by its slot count minus one for symbols that occur
+    private static void writeTable(BitWriter writer, int[] normalized) throws IOException {
+        for (int symbol = 0; symbol < 256; symbol++) {
+            if (normalized[symbol] > 0) {
+                writer.writeBits(1, 1);
+                writer.writeBits(normalized[symbol] - 1, TABLE_LOG);
+            } else {
+                writer.writeBits(0, 1);
+            }
+        }
+    }
+
+    private static int[] readTable(BitReader reader) throws IOException {
+        int[] normalized = new int[256];
+        int sum = 0;
+        for (int symbol = 0; symbol < 256; symbol++) {
+            if (reader.readBits(1) == 1) {
+                normalized[symbol] = reader.readBits(TABLE_LOG) + 1;
+                sum += normalized[symbol];
+            }
+        }
+        if (sum != TABLE_SIZE) {
+            throw new IOException("Corrupt FSE table: " + sum + " slots, expected " + TABLE_SIZE);
+        }
+        return normalized;
+    }
+}
@@ -1,191 +1,236 @@
 package org.example;
 
+import org.example.codec.CodecContext;
+import org.example.metrics.Metrics;
+import org.example.metrics.Phase;
+import org.example.models.Dictionary;
 import org.example.models.FrequencyTable;
-import org.example.models.Node;
+import org.example.util.BitReader;
+import org.example.util.BitWriter;
+import org.example.util.CanonicalCode;
+import org.example.util.CodeLengthBuilder;
+import org.example.util.ContentChecksums;
+import org.example.util.Histogram;
+import org.example.util.HuffmanDecoder;
 
 import java.io.*;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.PriorityQueue;
+import java.nio.file.Path;
 
+import static org.example.util.ByteUtil.readVarInt;
+import static org.example.util.ByteUtil.writeVarInt;
 import static org.example.util.EntropyCalculator.calculateFrequency;
 
 public class HuffmanAlgorithm {
+    public static final String NAME = "huffman";
+    private static final int MAX_CODE_LENGTH = 15;
+    private static final int CHUNK_SIZE = 8192;
+    private static final int CODE_LENGTHS_SIZE = 128;
 
     public static void compress(String inputPath, String outputPath) throws IOException {
         File inputFile = new File(inputPath);
         if (inputFile.length() == 0){
             throw new IOException("Empty file");
         }
+        long begin = Metrics.start();
         FrequencyTable frequencyTable = calculateFrequency(inputFile);
-        Node root = createTree(frequencyTable);
-
-        Map<Integer, String> codeMap = new HashMap<>();
-        generateCodes(root, "", codeMap);
+        byte[] codeLengths = computeCodeLengths(frequencyTable);
+        int[] codes = CanonicalCode.assignCodes(codeLengths);
+        Metrics.codeLengths(NAME, codeLengths);
 
+        ContentChecksums.Collector checksums = new ContentChecksums.Collector();
         try (
-                BufferedInputStream bis = new BufferedInputStream(new FileInputStream(inputPath));
-                DataOutputStream dos = new DataOutputStream(new FileOutputStream(outputPath));
+                BufferedInputStream bis = new BufferedInputStream(checksums.checking(new FileInputStream(inputPath)));
+                DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputPath)))
         ) {
             dos.writeLong(inputFile.length());
-
-            dos.writeInt(codeMap.size());
-
-            int symbol;
-            String code;
-            for (var entry : codeMap.entrySet()) {
-                symbol = entry.getKey();
-                code = entry.getValue();
-
-                dos.writeByte(symbol);
-                dos.writeByte(code.length());
-
-                int tempByte = 0;
-                int bitCounter = 0;
-                for(char c: code.toCharArray()) {
-                    tempByte = (tempByte << 1) | (c == '1' ? 1 : 0);
-                    bitCounter++;
-                    if(bitCounter == 8) {
-                        dos.writeByte(tempByte);
-                        bitCounter = 0;
-                        tempByte = 0;
-                    }
-                }
-                if(bitCounter > 0){
-                    tempByte <<= (8 - bitCounter);
-                    dos.writeByte(tempByte);
+            writeCodeLengths(dos, codeLengths);
+
+            BitWriter writer = new BitWriter(dos);
+            byte[] chunk = new byte[CHUNK_SIZE];
+            int n, symbol;
+            while ((n = bis.read(chunk)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    symbol = chunk[i] & 0xFF;
+                    writer.writeBits(codes[symbol], codeLengths[symbol]);
                 }
             }
-
-            int buffer = 0;
-            int bitCounter = 0;
-            int byteRead;
-
-            while ((byteRead = bis.read()) != -1) {
-                code = codeMap.get(byteRead & 0xFF);
-                for (char bit : code.toCharArray()) {
-                    buffer = (buffer << 1) | (bit == '1' ? 1 : 0);
-                    bitCounter++;
-                    if (bitCounter == 8) {
-                        dos.writeByte(buffer);
-                        bitCounter = 0;
-                        buffer = 0;
-                    }
-                }
-            }
-            if (bitCounter > 0) {
-                buffer <<= (8 - bitCounter);
-                dos.writeByte(buffer);
-            }
+            writer.flush();
+            checksums.write(dos);
         }
+        Metrics.fileEncoded(NAME, inputPath, outputPath, begin);
     }
 
     public static void decompress(String inputPath, String outputPath) throws IOException {
+        long begin = Metrics.start();
+        ContentChecksums checksums = ContentChecksums.read(Path.of(inputPath));
         try (
-                DataInputStream dis = new DataInputStream(new FileInputStream(inputPath));
+                DataInputStream dis = new DataInputStream(new BufferedInputStream(
+                        checksums.compressedData(new FileInputStream(inputPath))));
                 BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(outputPath))
         ) {
+            ContentChecksums.Verifier verifier = checksums.verifying(bos);
             long length = dis.readLong();
-            int tableSize = dis.readInt();
-            Map<Integer, String> reverseCodeMap = new HashMap<>(tableSize);
-
-            int byteValue, codeLength, read, one, bit;
-
-            for (int i = 0; i < tableSize; i++) {
-                byteValue = dis.readUnsignedByte();
-                codeLength = dis.readByte() & 0xFF;
-                StringBuilder builder = new StringBuilder();
-                read = 0;
-
-                while (read < codeLength) {
-                    one = dis.readUnsignedByte();
-                    for (int j = 7; j >= 0 && read < codeLength; j--) {
-                        bit = (one >> j) & 1;
-                        builder.append(bit == 1 ? '1' : '0');
-                        read++;
-                    }
-                }
-                reverseCodeMap.put(byteValue, builder.toString());
-            }
+            byte[] codeLengths = readCodeLengths(dis);
 
-            Node root = recreateTree(reverseCodeMap);
-            Node currentNode = root;
-            long written = 0;
-            int dataByte;
+            HuffmanDecoder decoder = HuffmanDecoder.canonical(codeLengths);
+            BitReader reader = new BitReader(dis);
 
+            byte[] out = new byte[CHUNK_SIZE];
+            long written = 0;
             while (written < length) {
-                dataByte = dis.readUnsignedByte();
-                for (int j = 7; j >= 0 && written < length; j--) {
-                    bit = (dataByte >> j) & 1;
-                    currentNode = (bit == 0) ? currentNode.getLeft() : currentNode.getRight();
-                    if (currentNode.isLeaf()) {
-                        bos.write(currentNode.getValue());
-                        currentNode = root;
-                        written++;
-                    }
+                int count = (int) Math.min(out.length, length - written);
+                for (int i = 0; i < count; i++) {
+                    out[i] = (byte) decoder.decode(reader);
                 }
+                verifier.write(out, 0, count);
+                written += count;
             }
+            verifier.finish();
         }
+        Metrics.fileDecoded(NAME, inputPath, outputPath, begin);
     }
 
-    private static void generateCodes(Node node, String code, Map<Integer, String> codeMap) {
-        if (node.isLeaf()) {
-            codeMap.put(node.getValue(), code.isEmpty() ? "0" : code);
-            return;
-        }
-        generateCodes(node.getLeft(), code + "0", codeMap);
-        generateCodes(node.getRight(), code + "1", codeMap);
+    public static void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        new Context().encodeBlock(data, offset, length, out);
+    }
+
+    public static void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                                   byte[] dst, int dstOffset, int dstLength) throws IOException {
+        new Context().decodeBlock(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+    }
+
+    // for small messages: the dictionary's shared table replaces the stored one, leaving [id][length][codes]
+    public static byte[] compress(byte[] data, Dictionary dictionary) throws IOException {
+        return new Context().compress(data, dictionary);
+    }
+
+    public static byte[] decompress(byte[] compressed, Dictionary dictionary) throws IOException {
+        return new Context().decompress(compressed, dictionary);
     }
 
-    private static Node createTree(FrequencyTable frequencyTable) {
-        PriorityQueue<Node> queue = new PriorityQueue<>(Comparator.comparingLong(Node::getFrequency));
+    // keeps the histogram, bit buffer and decode table, and the codes of the last dictionary used
+    public static class Context extends CodecContext {
+        private final FrequencyTable frequencyTable = new FrequencyTable();
+        private final BitWriter writer = new BitWriter(null);
+        private final byte[] packed = new byte[CODE_LENGTHS_SIZE];
+        private final byte[] codeLengths = new byte[256];
+        private final ByteArrayOutputStream message = new ByteArrayOutputStream();
+        private HuffmanDecoder decoder;
+
+        private Dictionary primedFor;
+        private int[] dictionaryCodes;
+        private HuffmanDecoder dictionaryDecoder;
+
+        @Override
+        public void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException {
+            long start = Metrics.start();
+            frequencyTable.clear();
+            Histogram.count(data, offset, length, frequencyTable);
+            byte[] codeLengths = computeCodeLengths(frequencyTable);
+            int[] codes = CanonicalCode.assignCodes(codeLengths);
+            Metrics.codeLengths(NAME, codeLengths);
+            Metrics.phase(NAME, Phase.MODELING, start);
+
+            start = Metrics.start();
+            for (int i = 0; i < 256; i += 2) {
+                packed[i >> 1] = (byte) ((codeLengths[i] << 4) | codeLengths[i + 1]);
+            }
+            out.write(packed);
+            writeSymbols(data, offset, length, codes, codeLengths, out);
+            Metrics.phase(NAME, Phase.BIT_OUTPUT, start);
+        }
+
+        @Override
+        public void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                                byte[] dst, int dstOffset, int dstLength) throws IOException {
+            if (srcLength < CODE_LENGTHS_SIZE) {
+                throw new IOException("Truncated Huffman block");
+            }
+            unpackCodeLengths(src, srcOffset, codeLengths);
+            if (decoder == null) {
+                decoder = HuffmanDecoder.canonical(codeLengths);
+            } else {
+                decoder.rebuild(CanonicalCode.assignCodes(codeLengths), codeLengths);
+            }
+            BitReader reader = new BitReader(src, srcOffset + CODE_LENGTHS_SIZE, srcLength - CODE_LENGTHS_SIZE);
+            for (int i = dstOffset, end = dstOffset + dstLength; i < end; i++) {
+                dst[i] = (byte) decoder.decode(reader);
+            }
+        }
 
-        long freq;
+        public byte[] compress(byte[] data, Dictionary dictionary) throws IOException {
+            prime(dictionary);
+            message.reset();
+            DataOutputStream dos = new DataOutputStream(message);
+            dos.writeInt(dictionary.getId());
+            writeVarInt(dos, data.length);
+            writeSymbols(data, 0, data.length, dictionaryCodes, dictionary.getCodeLengths(), message);
+            return message.toByteArray();
+        }
 
-        for (int i = 0; i < 256; i++) {
-            freq = frequencyTable.getCountForSymbol(i);
-            if (freq > 0) {
-                queue.add(new Node(i, freq));
+        public byte[] decompress(byte[] compressed, Dictionary dictionary) throws IOException {
+            dictionary.checkId(compressed);
+            ByteArrayInputStream in = new ByteArrayInputStream(compressed, 4, compressed.length - 4);
+            byte[] data = new byte[readVarInt(in)];
+            prime(dictionary);
+            int offset = compressed.length - in.available();
+            BitReader reader = new BitReader(compressed, offset, compressed.length - offset);
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) dictionaryDecoder.decode(reader);
             }
+            return data;
         }
 
-        if (queue.isEmpty()){
-            return null;
+        private void prime(Dictionary dictionary) throws IOException {
+            if (primedFor != dictionary) {
+                dictionaryCodes = CanonicalCode.assignCodes(dictionary.getCodeLengths());
+                dictionaryDecoder = new HuffmanDecoder(dictionaryCodes, dictionary.getCodeLengths());
+                primedFor = dictionary;
+            }
         }
 
-        while (queue.size() > 1) {
-            Node leftNode = queue.poll();
-            Node rightNode = queue.poll();
-            Node rootNode = new Node(leftNode, rightNode);
-            queue.add(rootNode);
+        private void writeSymbols(byte[] data, int offset, int length, int[] codes, byte[] codeLengths,
+                                  OutputStream out) throws IOException {
+            writer.reset(out);
+            int symbol;
+            for (int i = offset, end = offset + length; i < end; i++) {
+                symbol = data[i] & 0xFF;
+                writer.writeBits(codes[symbol], codeLengths[symbol]);
+            }
+            writer.flush();
         }
-        return queue.poll();
     }
 
-    private static Node recreateTree(Map<Integer, String> codeMap) {
-        Node rootNode = new Node(-1, 0);
-        int symbol;
-        String code;
-        for (var entry : codeMap.entrySet()) {
-            symbol = entry.getKey();
-            code = entry.getValue();
-            insertNode(rootNode, symbol, code);
+    // code lengths limited to MAX_CODE_LENGTH over the table's alphabet, zero for symbols that do not occur
+    public static byte[] computeCodeLengths(FrequencyTable frequencyTable) {
+        return CodeLengthBuilder.huffman(frequencyTable.toArray(), MAX_CODE_LENGTH);
+    }
+
+    // two 4-bit code lengths per byte, zero for symbols that do not occur
+    private static void writeCodeLengths(OutputStream out, byte[] codeLengths) throws IOException {
+        byte[] packed = new byte[CODE_LENGTHS_SIZE];
+        for (int i = 0; i < 256; i += 2) {
+            packed[i >> 1] = (byte) ((codeLengths[i] << 4) | codeLengths[i + 1]);
         }
-        return rootNode;
+        out.write(packed);
     }
 
-    private static void insertNode(Node node, int symbol, String code) {
-        Node currentNode = node;
-        for (char bit : code.toCharArray()) {
-            if (bit == '0') {
-                if (currentNode.getLeft() == null) currentNode.setLeft(new Node(-1, 0));
-                currentNode = currentNode.getLeft();
-            } else {
-                if (currentNode.getRight() == null) currentNode.setRight(new Node(-1, 0));
-                currentNode = currentNode.getRight();
-            }
+    private static byte[] readCodeLengths(DataInputStream dis) throws IOException {
+        byte[] packed = new byte[CODE_LENGTHS_SIZE];
+        dis.readFully(packed);
+        return unpackCodeLengths(packed, 0);
+    }
+
+    private static byte[] unpackCodeLengths(byte[] packed, int offset) {
+        return unpackCodeLengths(packed, offset, new byte[256]);
+    }
+
+    static byte[] unpackCodeLengths(byte[] packed, int offset, byte[] codeLengths) {
+        for (int i = 0; i < 256; i += 2) {
+            int b = packed[offset + (i >> 1)] & 0xFF;
+            codeLengths[i] = (byte) (b >>> 4);
+            codeLengths[i + 1] = (byte) (b & 0x0F);
         }
-        currentNode.setValue(symbol);
+        return codeLengths;
     }
 }
@@ -0,0 +1,223 @@
+package org.example;
+
+import org.example.codec.CodecContext;
+import org.example.metrics.Metrics;
+import org.example.metrics.Phase;
+import org.example.models.FrequencyTable;
+import org.example.util.BitWriter;
+import org.example.util.CanonicalCode;
+import org.example.util.CodeLengthBuilder;
+import org.example.util.Histogram;
+import org.example.util.MultiSymbolTable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+import static org.example.util.ByteUtil.readVarInt;
+import static org.example.util.ByteUtil.writeVarInt;
+import static org.example.util.MultiSymbolTable.TABLE_BITS;
+
+// Huffman blocks split into four streams, one per quarter of the block, so the decoder can follow four
+// independent bit positions in the same loop instead of waiting on one; codes are limited to
+// TABLE_BITS so every lookup resolves in a single table, which also hands out short codes in pairs
+// block layout: [packed code lengths][varint lengths of streams 0-2][stream 0][stream 1][stream 2][stream 3]
+public class InterleavedHuffmanAlgorithm {
+    public static final String NAME = "huffman-x4";
+    private static final int STREAMS = 4;
+    private static final int CODE_LENGTHS_SIZE = 128;
+    private static final VarHandle LONG_BE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    public static void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        new Context().encodeBlock(data, offset, length, out);
+    }
+
+    public static void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                                   byte[] dst, int dstOffset, int dstLength) throws IOException {
+        new Context().decodeBlock(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+    }
+
+    // keeps the histogram, the code, the stream buffers and the decode table between blocks
+    public static class Context extends CodecContext {
+        private final FrequencyTable frequencyTable = new FrequencyTable();
+        private final BitWriter writer = new BitWriter(null);
+        private final ByteArrayOutputStream[] streams = new ByteArrayOutputStream[STREAMS];
+        private final byte[] packed = new byte[CODE_LENGTHS_SIZE];
+        private final byte[] codeLengths = new byte[256];
+        private final int[] codes = new int[256];
+        private final MultiSymbolTable table = new MultiSymbolTable();
+
+        public Context() {
+            for (int k = 0; k < STREAMS; k++) {
+                streams[k] = new ByteArrayOutputStream();
+            }
+        }
+
+        @Override
+        public void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException {
+            long start = Metrics.start();
+            frequencyTable.clear();
+            Histogram.count(data, offset, length, frequencyTable);
+            CodeLengthBuilder.huffman(frequencyTable.toArray(), TABLE_BITS, codeLengths);
+            CanonicalCode.assignCodes(codeLengths, codes);
+            Metrics.codeLengths(NAME, codeLengths);
+            Metrics.phase(NAME, Phase.MODELING, start);
+
+            start = Metrics.start();
+            int segment = (length + STREAMS - 1) / STREAMS;
+            for (int k = 0; k < STREAMS; k++) {
+                int from = offset + Math.min(k * segment, length);
+                int to = offset + Math.min((k + 1) * segment, length);
+                streams[k].reset();
+                writer.reset(streams[k]);
+                int symbol;
+                for (int i = from; i < to; i++) {
+                    symbol = data[i] & 0xFF;
+                    writer.writeBits(codes[symbol], codeLengths[symbol]);
+                }
+                writer.flush();
+            }
+
+            for (int i = 0; i < 256; i += 2) {
+                packed[i >> 1] = (byte) ((codeLengths[i] << 4) | codeLengths[i + 1]);
+            }
+            out.write(packed);
+            for (int k = 0; k < STREAMS - 1; k++) {
+                writeVarInt(out, streams[k].size());
+            }
+            for (ByteArrayOutputStream stream : streams) {
+                stream.writeTo(out);
+            }
+            Metrics.phase(NAME, Phase.BIT_OUTPUT, start);
+        }
+
+        @Override
+        public void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                                byte[] dst, int dstOffset, int dstLength) throws IOException {
+            if (srcLength < CODE_LENGTHS_SIZE) {
+                throw new IOException("Truncated Huffman block");
+            }
+            if (dstLength == 0) {
+                return;
+            }
+            HuffmanAlgorithm.unpackCodeLengths(src, srcOffset, codeLengths);
+            table.rebuild(codeLengths);
+
+            ByteArrayInputStream header = new ByteArrayInputStream(src, srcOffset + CODE_LENGTHS_SIZE,
+                    srcLength - CODE_LENGTHS_SIZE);
+            int[] lengths = new int[STREAMS - 1];
+            for (int k = 0; k < STREAMS - 1; k++) {
+                lengths[k] = readVarInt(header);
+            }
+            // bounds[k] is where stream k starts in src, bounds[STREAMS] where the last one ends
+            int[] bounds = new int[STREAMS + 1];
+            bounds[0] = srcOffset + srcLength - header.available();
+            bounds[STREAMS] = srcOffset + srcLength;
+            for (int k = 0; k < STREAMS - 1; k++) {
+                if (lengths[k] < 0 || lengths[k] > bounds[STREAMS] - bounds[k]) {
+                    throw new IOException("Invalid Huffman stream length: " + lengths[k]);
+                }
+                bounds[k + 1] = bounds[k] + lengths[k];
+            }
+
+            int segment = (dstLength + STREAMS - 1) / STREAMS;
+            int[] ends = new int[STREAMS];
+            for (int k = 0; k < STREAMS; k++) {
+                ends[k] = dstOffset + Math.min((k + 1) * segment, dstLength);
+            }
+            decodeStreams(src, bounds, dst, dstOffset, ends);
+        }
+
+        private void decodeStreams(byte[] src, int[] bounds, byte[] dst, int dstOffset, int[] ends)
+                throws IOException {
+            int[] entries = table.entries();
+            int shift = 64 - TABLE_BITS;
+            int invalid = 0;
+
+            // per stream: bit position from the start of the stream, next output position
+            int p0 = 0, p1 = 0, p2 = 0, p3 = 0;
+            int o0 = dstOffset, o1 = ends[0], o2 = ends[1], o3 = ends[2];
+            int b0 = bounds[0], b1 = bounds[1], b2 = bounds[2], b3 = bounds[3], b4 = bounds[4];
+            int e0 = ends[0], e1 = ends[1], e2 = ends[2], e3 = ends[3];
+
+            // a refill brings at least 57 bits, enough for four lookups of at most TABLE_BITS each;
+            // each lookup may store two symbols, the second of which is overwritten when only one was decoded
+            while (b0 + (p0 >>> 3) + 8 <= b1 && b1 + (p1 >>> 3) + 8 <= b2
+                    && b2 + (p2 >>> 3) + 8 <= b3 && b3 + (p3 >>> 3) + 8 <= b4
+                    && o0 + 8 <= e0 && o1 + 8 <= e1 && o2 + 8 <= e2 && o3 + 8 <= e3) {
+                long w0 = (long) LONG_BE.get(src, b0 + (p0 >>> 3)) << (p0 & 7);
+                long w1 = (long) LONG_BE.get(src, b1 + (p1 >>> 3)) << (p1 & 7);
+                long w2 = (long) LONG_BE.get(src, b2 + (p2 >>> 3)) << (p2 & 7);
+                long w3 = (long) LONG_BE.get(src, b3 + (p3 >>> 3)) << (p3 & 7);
+                for (int lookup = 0; lookup < 4; lookup++) {
+                    int x0 = entries[(int) (w0 >>> shift)];
+                    int x1 = entries[(int) (w1 >>> shift)];
+                    int x2 = entries[(int) (w2 >>> shift)];
+                    int x3 = entries[(int) (w3 >>> shift)];
+                    invalid |= x0 | x1 | x2 | x3;
+                    dst[o0] = (byte) x0;
+                    dst[o0 + 1] = (byte) (x0 >>> 8);
+                    dst[o1] = (byte) x1;
+                    dst[o1 + 1] = (byte) (x1 >>> 8);
+                    dst[o2] = (byte) x2;
+                    dst[o2 + 1] = (byte) (x2 >>> 8);
+                    dst[o3] = (byte) x3;
+                    dst[o3 + 1] = (byte) (x3 >>> 8);
+                    int n0 = (x0 >>> 16) & 0xF, n1 = (x1 >>> 16) & 0xF, n2 = (x2 >>> 16) & 0xF, n3 = (x3 >>> 16) & 0xF;
+                    w0 <<= n0;
+                    w1 <<= n1;
+                    w2 <<= n2;
+                    w3 <<= n3;
+                    p0 += n0;
+                    p1 += n1;
+                    p2 += n2;
+                    p3 += n3;
+                    o0 += (x0 >>> 24) & 3;
+                    o1 += (x1 >>> 24) & 3;
+                    o2 += (x2 >>> 24) & 3;
+                    o3 += (x3 >>> 24) & 3;
+                }
+            }
+            if (invalid < 0) {
+                throw new IOException("Invalid code in compressed data");
+            }
+
+            // the last symbols of each stream, where a full refill could read past it or a pair past its output
+            decodeTail(src, b0, b1, p0, dst, o0, e0, entries);
+            decodeTail(src, b1, b2, p1, dst, o1, e1, entries);
+            decodeTail(src, b2, b3, p2, dst, o2, e2, entries);
+            decodeTail(src, b3, b4, p3, dst, o3, e3, entries);
+        }
+
+        private static void decodeTail(byte[] src, int start, int limit, int position, byte[] dst, int out, int end,
+                                       int[] entries) throws IOException {
+            long available = 8L * (limit - start);
+            while (out < end) {
+                int index = 0;
+                int at = start + (position >>> 3);
+                // bytes past the end of the stream read as zeros, as the encoder padded the last one
+                for (int i = 0; i < 3; i++) {
+                    index = (index << 8) | (at + i < limit ? src[at + i] & 0xFF : 0);
+                }
+                int entry = entries[(index >>> (24 - TABLE_BITS - (position & 7))) & ((1 << TABLE_BITS) - 1)];
+                if (entry < 0) {
+                    throw new IOException("Invalid code in compressed data");
+                }
+                dst[out++] = (byte) entry;
+                if (((entry >>> 24) & 3) == 2 && out < end) {
+                    dst[out++] = (byte) (entry >>> 8);
+                    position += (entry >>> 16) & 0xF;
+                } else {
+                    position += (entry >>> 20) & 0xF;
+                }
+                if (position > available) {
+                    throw new IOException("Truncated Huffman stream");
+                }
+            }
+        }
+    }
+}
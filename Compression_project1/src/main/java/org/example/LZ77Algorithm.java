@@ -1,106 +1,466 @@
 package org.example;
 
+import org.example.codec.CodecContext;
+import org.example.metrics.Metrics;
+import org.example.models.Dictionary;
 import org.example.models.Token;
+import org.example.models.TokenSink;
+import org.example.util.ContentChecksums;
+import org.example.util.HashChainMatchFinder;
+import org.example.util.MappedFile;
+import org.example.util.SlidingWindow;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
 
-import static org.example.util.ByteUtil.readFileToByteArray;
+import static org.example.util.ByteUtil.readVarInt;
+import static org.example.util.ByteUtil.varIntSize;
+import static org.example.util.ByteUtil.writeVarInt;
 
 public class LZ77Algorithm {
-    private static final int OFFSET = 255;
-    private static final int FRONT_LIMIT = 15;
+    public static final String NAME = "lz77";
+    public static final int DEFAULT_WINDOW_SIZE = 1 << 16;
+    public static final int MAX_WINDOW_SIZE = 1 << 20;
+    public static final int DEFAULT_LEVEL = 6;
+    // the highest level replaces greedy and lazy matching with an optimal parse, for archival use
+    public static final int OPTIMAL_LEVEL = 10;
+    static final int MAX_MATCH = 258;
+
+    // indexed by compression level 1..9
+    private static final int[] CHAIN_DEPTH = {0, 4, 8, 16, 32, 64, 128, 256, 1024, 4096};
+    private static final int[] NICE_LENGTH = {0, 16, 32, 32, 64, 128, 128, 258, 258, 258};
+    private static final int LAZY_LEVEL = 4;
+    // a literal run is cut into sequences of at most this many literals, which bounds the writer's buffer
+    private static final int MAX_LITERAL_RUN = 1 << 16;
+    // a sequence's token byte holds the literal count above LENGTH_BITS bits of match length; literal runs are
+    // mostly one or two bytes long, as every greedy match is followed by a literal, so the length gets more bits
+    private static final int LENGTH_BITS = 5;
+    private static final int LITERAL_LIMIT = (1 << (8 - LENGTH_BITS)) - 1;
+    private static final int LENGTH_LIMIT = (1 << LENGTH_BITS) - 1;
+    private static final int CHUNK_SIZE = 8192;
 
     public static void compress(String inputPath, String outputPath) throws IOException {
-        byte[] data = readFileToByteArray(inputPath);
-        List<Token> encoded = new ArrayList<>();
+        compress(inputPath, outputPath, DEFAULT_WINDOW_SIZE, DEFAULT_LEVEL);
+    }
 
-        int cursor = 0;
-        while (cursor < data.length) {
-            Token match = findMatch(data, cursor);
-            encoded.add(match);
-            cursor += match.getLength() + 1;
+    public static void compress(String inputPath, String outputPath, int windowSize, int level) throws IOException {
+        if (windowSize > MAX_WINDOW_SIZE) {
+            throw new IllegalArgumentException("Window size exceeds " + MAX_WINDOW_SIZE + ": " + windowSize);
         }
-
+        if (level < 1 || level > OPTIMAL_LEVEL) {
+            throw new IllegalArgumentException("Compression level must be between 1 and " + OPTIMAL_LEVEL + ": " + level);
+        }
+        long begin = Metrics.start();
         try (
+                MappedFile input = new MappedFile(Path.of(inputPath));
                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputPath)))
         ) {
-            out.writeInt(encoded.size());
-            for (Token token : encoded) {
-                out.writeByte(token.getOffset());
-                out.writeByte(token.getLength());
-                out.writeByte(token.getSymbol());
+            ContentChecksums.Collector checksums = new ContentChecksums.Collector();
+            out.writeInt(windowSize);
+            int[] matchLengths = Metrics.isEnabled() ? new int[MAX_MATCH + 1] : null;
+            SequenceWriter sequences = new SequenceWriter();
+            sequences.reset(out);
+            TokenSink sink = counting(sequences, matchLengths);
+            // each segment is mapped together with the window before it, so matches can reach back across segments
+            for (long start = 0; start < input.size(); start += input.getSegmentSize()) {
+                long historyStart = Math.max(0, start - windowSize);
+                int history = (int) (start - historyStart);
+                int length = (int) Math.min(input.getSegmentSize(), input.size() - start);
+                ByteBuffer data = input.map(historyStart, history + length);
+                checksums.update(data.slice(history, length));
+                tokenize(data, history, history + length, windowSize, level, sink);
             }
+            sequences.finish();
+            checksums.write(out);
+            Metrics.matchLengths(NAME, matchLengths);
         }
+        Metrics.fileEncoded(NAME, inputPath, outputPath, begin);
     }
 
     public static void decompress(String inputPath, String outputPath) throws IOException {
+        long begin = Metrics.start();
+        ContentChecksums checksums = ContentChecksums.read(Path.of(inputPath));
         try (
-                DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(inputPath)));
+                DataInputStream dis = new DataInputStream(new BufferedInputStream(
+                        checksums.compressedData(new FileInputStream(inputPath))));
                 FileOutputStream fos = new FileOutputStream(outputPath)
         ) {
-            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-
-            int tokenCount = dis.readInt();
-            int offset, length, symbol;
-            for (int i = 0; i < tokenCount; i++) {
-                offset = dis.readUnsignedByte();
-                if (offset > buffer.size()) {
-                    throw new IOException("Offset exceeded limit");
+            ContentChecksums.Verifier verifier = checksums.verifying(fos);
+            int windowSize = dis.readInt();
+            if (Integer.bitCount(windowSize) != 1 || windowSize > MAX_WINDOW_SIZE) {
+                throw new IOException("Invalid window size: " + windowSize);
+            }
+            SlidingWindow window = new SlidingWindow(verifier, windowSize);
+
+            byte[] literals = new byte[CHUNK_SIZE];
+            int token, literalCount, lengthCode, n;
+            while ((token = dis.read()) != -1) {
+                literalCount = token >>> LENGTH_BITS;
+                if (literalCount == LITERAL_LIMIT) {
+                    literalCount += readVarInt(dis);
+                }
+                while (literalCount > 0) {
+                    n = Math.min(literalCount, literals.length);
+                    dis.readFully(literals, 0, n);
+                    window.write(literals, 0, n);
+                    literalCount -= n;
+                }
+                lengthCode = token & LENGTH_LIMIT;
+                if (lengthCode != 0) {
+                    if (lengthCode == LENGTH_LIMIT) {
+                        lengthCode += dis.readUnsignedByte();
+                    }
+                    window.copy(readVarInt(dis), lengthCode + HashChainMatchFinder.MIN_MATCH - 1);
                 }
+            }
+            window.flush();
+            verifier.finish();
+        }
+        Metrics.fileDecoded(NAME, inputPath, outputPath, begin);
+    }
+
+    public static void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        new Context().encodeBlock(data, offset, length, out);
+    }
+
+    // decodes straight into the destination array, which holds the whole window for a block; a block is
+    // only its sequences, as matches cannot reach past its start whatever window the encoder used
+    public static void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                                   byte[] dst, int dstOffset, int dstLength) throws IOException {
+        decodeTokens(src, srcOffset, srcOffset + srcLength, dst, dstOffset, dstOffset, dstOffset + dstLength);
+    }
+
+    // for small messages: the dictionary content is the window the message starts with,
+    // so even its first bytes can be matches; layout [id][length][tokens]
+    public static byte[] compress(byte[] data, Dictionary dictionary) throws IOException {
+        return new Context().compress(data, dictionary);
+    }
+
+    public static byte[] decompress(byte[] compressed, Dictionary dictionary) throws IOException {
+        return new Context().decompress(compressed, dictionary);
+    }
+
+    // keeps the hash chains between calls: after each input only the positions it inserted are taken out
+    // again, and with a dictionary its content stays inserted until a different dictionary comes along
+    public static class Context extends CodecContext {
+        private final HashChainMatchFinder finder = new HashChainMatchFinder(DEFAULT_WINDOW_SIZE,
+                CHAIN_DEPTH[DEFAULT_LEVEL], NICE_LENGTH[DEFAULT_LEVEL]);
+        private final ByteArrayOutputStream message = new ByteArrayOutputStream();
+        private final SequenceWriter sequences = new SequenceWriter();
+        // false until the chains are known to be empty
+        private boolean clean;
 
-                length = dis.readUnsignedByte();
-                symbol = dis.readUnsignedByte();
+        // dictionary content followed by room for a message
+        private Dictionary primedFor;
+        private byte[] window = new byte[0];
+        private ByteBuffer windowBuffer;
+        private byte[] decodeWindow = new byte[0];
+        private Dictionary decodeWindowFor;
 
-                byte[] outArr = buffer.toByteArray();
-                for (int j = 0; j < length; j++) {
-                    byte copied = outArr[outArr.length - offset];
-                    buffer.write(copied);
-                    fos.write(copied);
+        @Override
+        public void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException {
+            int[] matchLengths = Metrics.isEnabled() ? new int[MAX_MATCH + 1] : null;
+            // sliced, so bytes in front of the block are not used as match history
+            ByteBuffer block = ByteBuffer.wrap(data, offset, length).slice();
+            if (clean) {
+                finder.setData(block);
+            } else {
+                finder.reset(block);
+                primedFor = null;
+            }
+            sequences.reset(out);
+            finder.mark();
+            tokenize(finder, block, 0, 0, length, DEFAULT_LEVEL, counting(sequences, matchLengths));
+            sequences.finish();
+            clean = finder.rollback();
+            Metrics.matchLengths(NAME, matchLengths);
+        }
+
+        @Override
+        public void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                                byte[] dst, int dstOffset, int dstLength) throws IOException {
+            LZ77Algorithm.decodeBlock(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+        }
+
+        public byte[] compress(byte[] data, Dictionary dictionary) throws IOException {
+            byte[] content = dictionary.getContent();
+            int end = content.length + data.length;
+            if (primedFor != dictionary || window.length < end) {
+                prime(dictionary, end);
+            }
+            System.arraycopy(data, 0, window, content.length, data.length);
+
+            message.reset();
+            DataOutputStream dos = new DataOutputStream(message);
+            dos.writeInt(dictionary.getId());
+            writeVarInt(dos, data.length);
+            sequences.reset(dos);
+            finder.mark();
+            // the last positions of the content hash bytes of the message, so they go in with it
+            tokenize(finder, windowBuffer, Math.max(0, content.length - HashChainMatchFinder.MIN_MATCH + 1),
+                    content.length, end, DEFAULT_LEVEL, sequences);
+            sequences.finish();
+            if (!finder.rollback()) {
+                primedFor = null;
+            }
+            return message.toByteArray();
+        }
+
+        public byte[] decompress(byte[] compressed, Dictionary dictionary) throws IOException {
+            dictionary.checkId(compressed);
+            ByteArrayInputStream in = new ByteArrayInputStream(compressed, 4, compressed.length - 4);
+            int length = readVarInt(in);
+            byte[] content = dictionary.getContent();
+            if (decodeWindowFor != dictionary || decodeWindow.length < content.length + length) {
+                if (decodeWindow.length < content.length + length) {
+                    decodeWindow = new byte[Math.max(content.length + length, 2 * decodeWindow.length)];
                 }
+                System.arraycopy(content, 0, decodeWindow, 0, content.length);
+                decodeWindowFor = dictionary;
+            }
+            decodeTokens(compressed, compressed.length - in.available(), compressed.length,
+                    decodeWindow, 0, content.length, content.length + length);
+            return Arrays.copyOfRange(decodeWindow, content.length, content.length + length);
+        }
 
-                buffer.write(symbol);
-                fos.write(symbol);
+        private void prime(Dictionary dictionary, int capacity) {
+            byte[] content = dictionary.getContent();
+            if (window.length < capacity) {
+                window = new byte[Math.max(capacity, 2 * window.length)];
+                windowBuffer = ByteBuffer.wrap(window);
+            }
+            System.arraycopy(content, 0, window, 0, content.length);
+            finder.reset(windowBuffer);
+            for (int position = 0; position <= content.length - HashChainMatchFinder.MIN_MATCH; position++) {
+                finder.insert(position);
             }
+            primedFor = dictionary;
+            clean = false;
         }
     }
 
-    private static Token findMatch(byte[] input, int position) {
-        int maxBack = Math.max(0, position - OFFSET), bestLen = 0, bestOff = 0, maxLen = Math.min(FRONT_LIMIT, input.length - position - 1);
+    // fills dst[out, outEnd) from the sequences in src[in, inEnd); matches may reach back to historyStart
+    private static void decodeTokens(byte[] src, int in, int inEnd,
+                                     byte[] dst, int historyStart, int out, int outEnd) throws IOException {
+        int outStart = out;
+        int token, literalCount, length, offset, b, shift;
+        while (in < inEnd) {
+            token = src[in++] & 0xFF;
+            literalCount = token >>> LENGTH_BITS;
+            if (literalCount == LITERAL_LIMIT) {
+                shift = 0;
+                do {
+                    if (in == inEnd) {
+                        throw new IOException("Truncated LZ77 block");
+                    }
+                    b = src[in++];
+                    literalCount += (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+            }
+            if (literalCount < 0 || literalCount > inEnd - in || literalCount > outEnd - out) {
+                throw new IOException("Invalid LZ77 literal run: " + literalCount);
+            }
+            if (literalCount <= 2 && inEnd - in >= 2 && outEnd - out >= 2) {
+                // most runs are one or two literals; both bytes are copied either way, as one written past
+                // the run is overwritten by what follows it
+                dst[out] = src[in];
+                dst[out + 1] = src[in + 1];
+                in += literalCount;
+                out += literalCount;
+            } else if (literalCount < 16) {
+                for (int i = 0; i < literalCount; i++) {
+                    dst[out++] = src[in++];
+                }
+            } else {
+                System.arraycopy(src, in, dst, out, literalCount);
+                in += literalCount;
+                out += literalCount;
+            }
 
-        if (position == input.length - 1) {
-            return new Token(0, 0, input[position] & 0xFF);
+            length = token & LENGTH_LIMIT;
+            if (length == 0) {
+                continue;
+            }
+            if (length == LENGTH_LIMIT) {
+                if (in == inEnd) {
+                    throw new IOException("Truncated LZ77 block");
+                }
+                length += src[in++] & 0xFF;
+            }
+            length += HashChainMatchFinder.MIN_MATCH - 1;
+            offset = 0;
+            shift = 0;
+            do {
+                if (in == inEnd) {
+                    throw new IOException("Truncated LZ77 block");
+                }
+                b = src[in++];
+                offset |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            if (offset <= 0 || offset > out - historyStart || length < 0 || length > outEnd - out) {
+                throw new IOException("Invalid LZ77 match: offset " + offset + ", length " + length);
+            }
+            if (offset >= length) {
+                System.arraycopy(dst, out - offset, dst, out, length);
+                out += length;
+            } else {
+                for (int i = 0; i < length; i++, out++) {
+                    dst[out] = dst[out - offset];
+                }
+            }
         }
+        if (out != outEnd) {
+            throw new IOException("LZ77 block decoded to " + (out - outStart) + " bytes, expected " + (outEnd - outStart));
+        }
+    }
+
+    // counts match lengths into histogram on the way through; a null histogram leaves the sink as it is
+    static TokenSink counting(TokenSink sink, int[] histogram) {
+        if (histogram == null) {
+            return sink;
+        }
+        return token -> {
+            histogram[token.getLength()]++;
+            sink.accept(token);
+        };
+    }
 
-        for (int i = position - 1; i >= maxBack; i--) {
-            int currentLen = 0;
+    // groups tokens into sequences, each a run of literals and the match after it:
+    // [token][varint literal count - LITERAL_LIMIT][literals][length code - LENGTH_LIMIT][varint offset]
+    // the token byte holds the literal count and the length code, match length - MIN_MATCH + 1 or zero when the
+    // sequence has no match; a field at its limit continues in the varint or, for the length, the byte after it,
+    // which MAX_MATCH keeps below 256
+    static class SequenceWriter implements TokenSink {
+        private OutputStream out;
+        private byte[] literals = new byte[256];
+        private int literalCount;
 
-            while (currentLen < maxLen &&
-                    (position + currentLen) < input.length - 1 &&
-                    input[i + currentLen] == input[position + currentLen]) {
-                currentLen++;
+        void reset(OutputStream out) {
+            this.out = out;
+            literalCount = 0;
+        }
+
+        @Override
+        public void accept(Token token) throws IOException {
+            if (token.getLength() > 0) {
+                writeSequence(token.getLength(), token.getOffset());
             }
+            if (token.hasSymbol()) {
+                if (literalCount == literals.length) {
+                    if (literalCount == MAX_LITERAL_RUN) {
+                        writeSequence(0, 0);
+                    } else {
+                        literals = Arrays.copyOf(literals, 2 * literals.length);
+                    }
+                }
+                literals[literalCount++] = (byte) token.getSymbol();
+            }
+        }
 
-            if (currentLen > bestLen) {
-                bestLen = currentLen;
-                bestOff = position - i;
-                if (bestLen == maxLen) break;
+        // writes the literals still waiting for a match
+        void finish() throws IOException {
+            if (literalCount > 0) {
+                writeSequence(0, 0);
             }
         }
 
-        int nextIndex = position + bestLen;
-        int nextSymbol = (nextIndex < input.length) ? (input[nextIndex] & 0xFF) : 0;
+        private void writeSequence(int length, int offset) throws IOException {
+            int lengthCode = length == 0 ? 0 : length - HashChainMatchFinder.MIN_MATCH + 1;
+            out.write(Math.min(literalCount, LITERAL_LIMIT) << LENGTH_BITS | Math.min(lengthCode, LENGTH_LIMIT));
+            if (literalCount >= LITERAL_LIMIT) {
+                writeVarInt(out, literalCount - LITERAL_LIMIT);
+            }
+            out.write(literals, 0, literalCount);
+            literalCount = 0;
+            if (length > 0) {
+                if (lengthCode >= LENGTH_LIMIT) {
+                    out.write(lengthCode - LENGTH_LIMIT);
+                }
+                writeVarInt(out, offset);
+            }
+        }
+    }
 
-        if (bestOff > 255) {
-            bestOff = 255;
+    // encodes data[start, end); bytes before start only serve as match history
+    static void tokenize(ByteBuffer data, int start, int end, int windowSize, int level, TokenSink sink)
+            throws IOException {
+        if (level == OPTIMAL_LEVEL) {
+            new OptimalParser(windowSize, new TokenBytes(), true).parse(data, start, end, sink);
+            return;
         }
-        if (bestLen > 255) {
-            bestLen = 255;
+        HashChainMatchFinder finder = new HashChainMatchFinder(windowSize, CHAIN_DEPTH[level], NICE_LENGTH[level]);
+        finder.reset(data);
+        tokenize(finder, data, Math.max(0, start - windowSize), start, end, level, sink);
+    }
+
+    // as above, for a finder that already holds the positions before inserted
+    private static void tokenize(HashChainMatchFinder finder, ByteBuffer data, int inserted, int start, int end,
+                                 int level, TokenSink sink) throws IOException {
+        boolean lazy = level >= LAZY_LEVEL;
+        int lazyLimit = NICE_LENGTH[level];
+        int lastHashPosition = end - HashChainMatchFinder.MIN_MATCH;
+
+        for (int position = inserted; position < start && position <= lastHashPosition; position++) {
+            finder.insert(position);
         }
 
-        return new Token(bestOff, bestLen, nextSymbol);
+        int cursor = start;
+        inserted = start;
+        int length = -1, offset = 0;
+        while (cursor < end) {
+            // every token ends with a literal, so a match may not reach the last byte
+            if (length < 0) {
+                length = finder.findMatch(cursor, Math.min(MAX_MATCH, end - cursor - 1));
+                offset = finder.getMatchOffset();
+            }
+
+            if (lazy && length > 0 && length < lazyLimit && cursor + 1 < end) {
+                if (inserted == cursor && cursor <= lastHashPosition) {
+                    finder.insert(inserted++);
+                }
+                int nextLength = finder.findMatch(cursor + 1, Math.min(MAX_MATCH, end - cursor - 2));
+                if (nextLength > length) {
+                    sink.accept(new Token(0, 0, data.get(cursor) & 0xFF));
+                    cursor++;
+                    length = nextLength;
+                    offset = finder.getMatchOffset();
+                    continue;
+                }
+            }
+
+            sink.accept(new Token(length > 0 ? offset : 0, length, data.get(cursor + length) & 0xFF));
+            cursor += length + 1;
+            length = -1;
+
+            while (inserted < cursor && inserted <= lastHashPosition) {
+                finder.insert(inserted++);
+            }
+            inserted = Math.max(inserted, cursor);
+        }
     }
 
+    // the size of a token in the sequence format: a literal is its byte, as the token byte of its sequence is
+    // paid for by the match that ends it; a match is the token byte, the length past the token's field and the offset
+    private static class TokenBytes implements OptimalParser.CostModel {
+        @Override
+        public void prepare(ByteBuffer data, int start, int end) {
+        }
 
+        @Override
+        public int price(int length, int offset, int symbol) {
+            if (length == 0) {
+                return 8;
+            }
+            int extra = length - HashChainMatchFinder.MIN_MATCH + 1 >= LENGTH_LIMIT ? 1 : 0;
+            return 8 * (1 + extra + varIntSize(offset));
+        }
+
+        @Override
+        public void update(Token token) {
+        }
+    }
 }
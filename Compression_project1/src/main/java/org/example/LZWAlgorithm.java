@@ -1,102 +1,469 @@
 package org.example;
 
-import java.io.*;
-import java.util.*;
+import org.example.codec.CodecContext;
+import org.example.metrics.Metrics;
+import org.example.models.Dictionary;
+import org.example.util.BitReader;
+import org.example.util.BitWriter;
+import org.example.util.BoundedByteArrayOutputStream;
+import org.example.util.ContentChecksums;
+import org.example.util.MappedFile;
 
-import static org.example.util.ByteUtil.readFileToByteArray;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 public class LZWAlgorithm {
-    private static final int MAX_DICT_SIZE = 4096;
+    public static final String NAME = "lzw";
+    private static final int MIN_BITS = 9;
+    private static final int MAX_BITS = 16;
+    private static final int CLEAR_CODE = 256;
+    private static final int STOP_CODE = 257;
+    private static final int FIRST_CODE = 258;
+
+    private static final int HASH_BITS = MAX_BITS + 1;
+    // once the dictionary is full, the compression ratio is sampled this often (in input bytes)
+    private static final int CHECK_INTERVAL = 1 << 14;
+    // a sample has to fall this far below the best ratio since the last reset before the dictionary is
+    // cleared; rebuilding it costs more than the few percent an interval drifts on ordinary input
+    private static final double RESET_MARGIN = 0.9;
+    // tables primed from a dictionary's content, built once per dictionary
+    private static final Map<Dictionary, Primed> PRIMED = Collections.synchronizedMap(new WeakHashMap<>());
 
     public static void compress(String inputPath, String outputPath) throws IOException {
-        byte[] input = readFileToByteArray(inputPath);
+        long begin = Metrics.start();
+        try (
+                MappedFile input = new MappedFile(Path.of(inputPath));
+                DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputPath)))
+        ) {
+            ContentChecksums.Collector checksums = new ContentChecksums.Collector();
+            dos.writeByte(MAX_BITS);
+            BitWriter writer = new BitWriter(dos);
+            Encoder encoder = new Encoder(writer);
+            for (int i = 0; i < input.segmentCount(); i++) {
+                MappedByteBuffer segment = input.segment(i);
+                checksums.update(segment);
+                encoder.update(segment);
+            }
+            encoder.finish();
+            writer.flush();
+            checksums.write(dos);
+        }
+        Metrics.fileEncoded(NAME, inputPath, outputPath, begin);
+    }
+
+    public static void decompress(String inputPath, String outputPath) throws IOException {
+        long begin = Metrics.start();
+        ContentChecksums checksums = ContentChecksums.read(Path.of(inputPath));
+        try (
+                DataInputStream dis = new DataInputStream(new BufferedInputStream(
+                        checksums.compressedData(new FileInputStream(inputPath))));
+                BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(outputPath))
+        ) {
+            ContentChecksums.Verifier verifier = checksums.verifying(bos);
+            int maxBits = dis.readUnsignedByte();
+            new Decoder().decode(new BitReader(dis), maxBits, verifier, null);
+            verifier.finish();
+        }
+        Metrics.fileDecoded(NAME, inputPath, outputPath, begin);
+    }
+
+    public static void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        new Context().encodeBlock(data, offset, length, out);
+    }
+
+    public static void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                                   byte[] dst, int dstOffset, int dstLength) throws IOException {
+        new Context().decodeBlock(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+    }
+
+    // for small messages: the table starts out with the entries the dictionary content would have added,
+    // so the message can use strings longer than one byte from its first code; layout [id][codes]
+    public static byte[] compress(byte[] data, Dictionary dictionary) throws IOException {
+        return new Context().compress(data, dictionary);
+    }
+
+    public static byte[] decompress(byte[] compressed, Dictionary dictionary) throws IOException {
+        return new Context().decompress(compressed, dictionary);
+    }
+
+    // keeps the encoder's hash table and the decoder's entry tables; between inputs the encoder only
+    // clears the slots the last one filled, and both keep a primed table until the dictionary changes
+    public static class Context extends CodecContext {
+        private final BitWriter writer = new BitWriter(null);
+        private final ByteArrayOutputStream message = new ByteArrayOutputStream();
+        private Encoder encoder;
+        private Decoder decoder;
+
+        @Override
+        public void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException {
+            out.write(MAX_BITS);
+            encode(ByteBuffer.wrap(data, offset, length), out, null);
+        }
+
+        @Override
+        public void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                                byte[] dst, int dstOffset, int dstLength) throws IOException {
+            if (srcLength < 1) {
+                throw new IOException("Truncated LZW block");
+            }
+            BoundedByteArrayOutputStream out = new BoundedByteArrayOutputStream(dst, dstOffset, dstLength);
+            decoder().decode(new BitReader(src, srcOffset + 1, srcLength - 1), src[srcOffset] & 0xFF, out, null);
+            if (out.size() != dstLength) {
+                throw new IOException("LZW block decoded to " + out.size() + " bytes, expected " + dstLength);
+            }
+        }
+
+        public byte[] compress(byte[] data, Dictionary dictionary) throws IOException {
+            message.reset();
+            new DataOutputStream(message).writeInt(dictionary.getId());
+            encode(ByteBuffer.wrap(data), message, primed(dictionary));
+            return message.toByteArray();
+        }
+
+        public byte[] decompress(byte[] compressed, Dictionary dictionary) throws IOException {
+            dictionary.checkId(compressed);
+            message.reset();
+            decoder().decode(new BitReader(compressed, 4, compressed.length - 4), MAX_BITS, message,
+                    primed(dictionary));
+            return message.toByteArray();
+        }
+
+        private void encode(ByteBuffer data, OutputStream out, Primed primed) throws IOException {
+            if (encoder == null) {
+                encoder = new Encoder();
+            }
+            writer.reset(out);
+            encoder.reset(writer, primed);
+            encoder.update(data);
+            encoder.finish();
+            writer.flush();
+        }
+
+        private Decoder decoder() {
+            if (decoder == null) {
+                decoder = new Decoder();
+            }
+            return decoder;
+        }
+    }
+
+    private static Primed primed(Dictionary dictionary) {
+        return PRIMED.computeIfAbsent(dictionary, d -> new Primed(d.getContent()));
+    }
+
+    // the entries an encoder adds while parsing the content, in the forms both sides need
+    private static class Primed {
+        private final int[] keys;
+        private final int[] values;
+        private final int[] prefix;
+        private final byte[] suffix;
+        private final int[] length;
+        private final int dictSize;
+        private final int width;
+
+        Primed(byte[] content) {
+            Encoder encoder = new Encoder();
+            encoder.prime(content);
+            keys = encoder.keys;
+            values = encoder.values;
+            dictSize = encoder.dictSize;
+            width = encoder.width;
 
-        Map<String, Integer> dict = new HashMap<>(512);
-        for (int i = 0; i < 256; i++) {
-            dict.put("" + (char) i, i);
+            prefix = new int[1 << MAX_BITS];
+            suffix = new byte[1 << MAX_BITS];
+            length = new int[1 << MAX_BITS];
+            for (int i = 0; i < 256; i++) {
+                suffix[i] = (byte) i;
+                length[i] = 1;
+            }
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != -1) {
+                    prefix[values[slot]] = keys[slot] >>> 8;
+                    suffix[values[slot]] = (byte) keys[slot];
+                }
+            }
+            // an entry's prefix is always an older code
+            for (int code = FIRST_CODE; code < dictSize; code++) {
+                length[code] = length[prefix[code]] + 1;
+            }
+        }
+    }
+
+    // encoder state survives between update calls, so input can arrive in several segments
+    private static class Encoder {
+        private BitWriter writer;
+        // open addressing on (prefix code << 8 | next byte); empty slots hold -1
+        private final int[] keys = new int[1 << HASH_BITS];
+        private final int[] values = new int[1 << HASH_BITS];
+        // the table was empty, or held base, before the slots listed in added were filled;
+        // after a CLEAR the list no longer covers everything
+        private Primed base;
+        private final int[] added = new int[1 << MAX_BITS];
+        private int addedCount;
+        private boolean cleared;
+
+        private int width = MIN_BITS;
+        private int dictSize = FIRST_CODE;
+        private int w = -1;
+        private long bytesIn;
+        private long bitsOut;
+        private long nextCheck = CHECK_INTERVAL;
+        private long checkedIn;
+        private long checkedBits;
+        private double bestRatio;
+
+        Encoder() {
+            Arrays.fill(keys, -1);
+        }
+
+        Encoder(BitWriter writer) {
+            this();
+            this.writer = writer;
         }
-        int dictSize = 256;
 
-        List<Integer> codeList = new ArrayList<>(input.length);
-        String w = "";
-        for (byte b : input) {
-            char c = (char) (b & 0xFF);
-            String wc = w + c;
-            if (dict.containsKey(wc)) {
-                w = wc;
+        // starts a new input on an empty table, or on one primed from a dictionary
+        void reset(BitWriter writer, Primed primed) {
+            this.writer = writer;
+            if (cleared || primed != base) {
+                if (primed == null) {
+                    Arrays.fill(keys, -1);
+                } else {
+                    System.arraycopy(primed.keys, 0, keys, 0, keys.length);
+                    System.arraycopy(primed.values, 0, values, 0, values.length);
+                }
             } else {
-                codeList.add(dict.get(w));
-                if (dictSize < MAX_DICT_SIZE) {
-                    dict.put(wc, dictSize++);
+                for (int i = 0; i < addedCount; i++) {
+                    keys[added[i]] = -1;
                 }
-                w = "" + c;
             }
+            base = primed;
+            addedCount = 0;
+            cleared = false;
+            width = primed == null ? MIN_BITS : primed.width;
+            dictSize = primed == null ? FIRST_CODE : primed.dictSize;
+            w = -1;
+            bytesIn = 0;
+            bitsOut = 0;
+            nextCheck = CHECK_INTERVAL;
+            checkedIn = 0;
+            checkedBits = 0;
+            bestRatio = 0;
         }
 
-        if (!w.isEmpty()) {
-            codeList.add(dict.get(w));
+        // adds the entries parsing content would add, without writing codes; the last string is dropped
+        void prime(byte[] content) {
+            int w = -1;
+            for (byte b : content) {
+                int c = b & 0xFF;
+                if (w == -1) {
+                    w = c;
+                    continue;
+                }
+                int key = (w << 8) | c;
+                int slot = (key * 0x9E3779B1) >>> (32 - HASH_BITS);
+                while (keys[slot] != -1 && keys[slot] != key) {
+                    slot = (slot + 1) & ((1 << HASH_BITS) - 1);
+                }
+                if (keys[slot] == key) {
+                    w = values[slot];
+                    continue;
+                }
+                if (dictSize < (1 << MAX_BITS)) {
+                    keys[slot] = key;
+                    values[slot] = dictSize++;
+                    if (dictSize > (1 << width) && width < MAX_BITS) {
+                        width++;
+                    }
+                }
+                w = c;
+            }
         }
 
-        try (
-                DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputPath)))
-        ) {
-            dos.writeInt(codeList.size());
-            for (int code : codeList) {
-                dos.writeShort(code);
+        void update(ByteBuffer input) throws IOException {
+            int i = input.position(), end = input.limit();
+            // bytesIn counts input consumed before this buffer, so base + i is the absolute position
+            long base = bytesIn - i;
+            bytesIn += end - i;
+            if (i < end && w == -1) {
+                w = input.get(i++) & 0xFF;
+            }
+            for (; i < end; i++) {
+                int c = input.get(i) & 0xFF;
+                int key = (w << 8) | c;
+                int slot = (key * 0x9E3779B1) >>> (32 - HASH_BITS);
+                while (keys[slot] != -1 && keys[slot] != key) {
+                    slot = (slot + 1) & ((1 << HASH_BITS) - 1);
+                }
+                if (keys[slot] == key) {
+                    w = values[slot];
+                    continue;
+                }
+
+                writer.writeBits(w, width);
+                bitsOut += width;
+                if (dictSize < (1 << MAX_BITS)) {
+                    keys[slot] = key;
+                    values[slot] = dictSize++;
+                    added[addedCount++] = slot;
+                    if (dictSize > (1 << width) && width < MAX_BITS) {
+                        width++;
+                    }
+                    if (dictSize == 1 << MAX_BITS) {
+                        Metrics.dictionaryFull(NAME, base + i);
+                    }
+                } else if (base + i >= nextCheck) {
+                    checkRatio(base + i);
+                }
+                w = c;
+            }
+        }
+
+        // a full dictionary stops adapting; start over once the ratio of the last interval drops clearly
+        // below the best one seen since the last reset
+        private void checkRatio(long consumed) throws IOException {
+            nextCheck = consumed + CHECK_INTERVAL;
+            double ratio = (double) (consumed - checkedIn) / (bitsOut - checkedBits);
+            checkedIn = consumed;
+            checkedBits = bitsOut;
+            if (ratio < bestRatio * RESET_MARGIN) {
+                Metrics.dictionaryReset(NAME, consumed);
+                writer.writeBits(CLEAR_CODE, width);
+                Arrays.fill(keys, -1);
+                cleared = true;
+                addedCount = 0;
+                dictSize = FIRST_CODE;
+                width = MIN_BITS;
+                bestRatio = 0;
+            } else {
+                bestRatio = Math.max(bestRatio, ratio);
+            }
+        }
+
+        void finish() throws IOException {
+            if (w != -1) {
+                writer.writeBits(w, width);
+                // the decoder widens for the entry that would follow this code, so STOP has to as well
+                if (dictSize + 1 > (1 << width) && width < MAX_BITS) {
+                    width++;
+                }
             }
+            writer.writeBits(STOP_CODE, width);
         }
     }
 
-    public static void decompress(String inputPath, String outputPath) throws IOException {
-        try (
-                DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(inputPath)));
-                BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(outputPath))
-        ) {
+    // entry tables kept between inputs; entries of a primed table survive as long as no CLEAR overwrote them
+    private static class Decoder {
+        // entry k is entry prefix[k] followed by byte suffix[k]
+        private final int[] prefix = new int[1 << MAX_BITS];
+        private final byte[] suffix = new byte[1 << MAX_BITS];
+        private final int[] length = new int[1 << MAX_BITS];
+        private final byte[] entry = new byte[1 << MAX_BITS];
+        // the primed table entries FIRST_CODE up to its dictSize currently hold, if any
+        private Primed base;
 
-            int codesLength = dis.readInt();
-            if (codesLength <= 0) {
-                throw new IOException("Codes length can't be less than 1");
+        Decoder() {
+            for (int i = 0; i < 256; i++) {
+                suffix[i] = (byte) i;
+                length[i] = 1;
             }
+        }
 
-            int[] codes = new int[codesLength];
-            for (int i = 0; i < codesLength; i++) {
-                codes[i] = dis.readUnsignedShort();
+        // primed tables are only used with maxBits == MAX_BITS
+        void decode(BitReader reader, int maxBits, OutputStream out, Primed primed) throws IOException {
+            if (maxBits < MIN_BITS || maxBits > MAX_BITS) {
+                throw new IOException("Invalid LZW code width: " + maxBits);
             }
+            int maxDictSize = 1 << maxBits;
+            int[] prefix = this.prefix;
+            byte[] suffix = this.suffix;
+            int[] length = this.length;
+            byte[] entry = this.entry;
 
-            Map<Integer, String> dict = new HashMap<>(512);
-            for (int i = 0; i < 256; i++) {
-                dict.put(i, "" + (char) i);
+            int width = MIN_BITS;
+            int dictSize = FIRST_CODE;
+            if (primed != null) {
+                if (primed != base) {
+                    int n = primed.dictSize - FIRST_CODE;
+                    System.arraycopy(primed.prefix, FIRST_CODE, prefix, FIRST_CODE, n);
+                    System.arraycopy(primed.suffix, FIRST_CODE, suffix, FIRST_CODE, n);
+                    System.arraycopy(primed.length, FIRST_CODE, length, FIRST_CODE, n);
+                }
+                width = primed.width;
+                dictSize = primed.dictSize;
             }
-            int dictSize = 256;
+            base = primed;
 
-            String w = dict.get(codes[0]);
-            writeString(bos, w);
+            int previous = -1;
+            byte previousFirst = 0;
 
-            for (int i = 1; i < codes.length; i++) {
-                int key = codes[i];
-                String entry;
+            int code;
+            while ((code = reader.readBits(width)) != STOP_CODE) {
+                if (code == CLEAR_CODE) {
+                    width = MIN_BITS;
+                    dictSize = FIRST_CODE;
+                    previous = -1;
+                    base = null;
+                    continue;
+                }
+                if (previous == -1) {
+                    // a single byte, or any entry of a primed table
+                    if (code >= dictSize) {
+                        throw new IOException("Invalid LZW code: " + code);
+                    }
+                    int n = expand(code, prefix, suffix, length, entry);
+                    out.write(entry, 0, n);
+                    previous = code;
+                    previousFirst = entry[0];
+                    // the encoder adds an entry after its first code too; only a primed table can be
+                    // close enough to a width boundary for that to matter
+                    if (dictSize < maxDictSize && dictSize + 1 > (1 << width) && width < maxBits) {
+                        width++;
+                    }
+                    continue;
+                }
 
-                if (dict.containsKey(key)) {
-                    entry = dict.get(key);
-                } else if (key == dictSize) {
-                    entry = w + w.charAt(0);
+                byte first;
+                if (code < dictSize) {
+                    int n = expand(code, prefix, suffix, length, entry);
+                    out.write(entry, 0, n);
+                    first = entry[0];
+                } else if (code == dictSize) {
+                    int n = expand(previous, prefix, suffix, length, entry);
+                    out.write(entry, 0, n);
+                    out.write(previousFirst);
+                    first = previousFirst;
                 } else {
-                    throw new IOException("Invalid LZW code: " + key);
+                    throw new IOException("Invalid LZW code: " + code);
                 }
 
-                writeString(bos, entry);
-
-                if (dictSize < MAX_DICT_SIZE) {
-                    dict.put(dictSize++, w + entry.charAt(0));
+                if (dictSize < maxDictSize) {
+                    prefix[dictSize] = previous;
+                    suffix[dictSize] = first;
+                    length[dictSize] = length[previous] + 1;
+                    dictSize++;
+                    // the encoder has already added its next entry when it writes the following code
+                    if (dictSize + 1 > (1 << width) && width < maxBits) {
+                        width++;
+                    }
                 }
-                w = entry;
+                previous = code;
+                previousFirst = first;
             }
         }
     }
 
-    private static void writeString(BufferedOutputStream bos, String s) throws IOException {
-        for (int i = 0, len = s.length(); i < len; i++) {
-            bos.write((byte) s.charAt(i));
+    private static int expand(int code, int[] prefix, byte[] suffix, int[] length, byte[] entry) {
+        int n = length[code];
+        for (int i = n - 1; i >= 0; i--) {
+            entry[i] = suffix[code];
+            code = prefix[code];
         }
+        return n;
     }
 }
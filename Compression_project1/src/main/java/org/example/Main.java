@@ -1,24 +1,46 @@
 package org.example;
 
+import org.example.codec.BlockContainer;
+import org.example.codec.Codec;
+import org.example.codec.Codecs;
+import org.example.codec.PipelinedContainer;
+import org.example.codec.SeekableContainer;
+import org.example.metrics.Metrics;
+import org.example.metrics.MetricsRegistry;
+import org.example.models.Dictionary;
+import org.example.util.DictionaryTrainer;
 import org.example.util.EntropyCalculator;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
 public class Main {
+    private static final int DICTIONARY_MESSAGES = 500;
 
     private static PrintWriter report;
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            runBatch(args);
+            return;
+        }
         String inputBinary = (args.length > 0) ? args[0] : "sample.bin";
         String inputText = (args.length > 1) ? args[1] : "sample.txt";
         String reportPath = "report.txt";
+        String metricsPath = "metrics.json";
 
         try {
             report = new PrintWriter(reportPath);
+            MetricsRegistry metrics = MetricsRegistry.withPlatformMBeanServer();
+            Metrics.setListener(metrics);
 
             double entropyBin = EntropyCalculator.calculateEntropy(Path.of(inputBinary).toFile());
             double entropyTxt = EntropyCalculator.calculateEntropy(Path.of(inputText).toFile());
@@ -28,19 +50,84 @@ public class Main {
             logFormatted("Datoteka: %-12s Entropija: %.5f bits/symbol%n%n", inputText, entropyTxt);
 
             processAlgorithmGroup("HUFFMAN KODIRANJE", inputBinary, inputText, ".huff");
+            processAlgorithmGroup("HUFFMAN SA 4 ISPREPLETENA TOKA", inputBinary, inputText, ".huf4");
+            processAlgorithmGroup("ADAPTIVNI HUFFMAN (JEDAN PROLAZ)", inputBinary, inputText, ".ahuff");
+            processAlgorithmGroup("FSE (tANS) ENTROPIJSKO KODIRANJE", inputBinary, inputText, ".fse");
+            processAlgorithmGroup("ADAPTIVNI RANGE CODER (RED 1)", inputBinary, inputText, ".rc");
             processAlgorithmGroup("SHANNON–FANO METODA", inputBinary, inputText, ".sf");
             processAlgorithmGroup("LZ77 KOMPRESIJA", inputBinary, inputText, ".lz77");
             processAlgorithmGroup("LZW KOMPRESIJA", inputBinary, inputText, ".lzw");
+            processAlgorithmGroup("LZ77 + HUFFMAN (DEFLATE)", inputBinary, inputText, ".defl");
+            processAlgorithmGroup("LZ77 OPTIMALNO PARSIRANJE (NIVO 10)", inputBinary, inputText, ".lz77o");
+            processAlgorithmGroup("DEFLATE OPTIMALNO PARSIRANJE (NIVO 10)", inputBinary, inputText, ".deflo");
+            processAlgorithmGroup("AUTOMATSKI IZBOR PO BLOKU", inputBinary, inputText, ".auto");
+            processAlgorithmGroup("PROTOCNA OBRADA (ASINHRONI I/O)", inputBinary, inputText, ".pipe");
+            processDictionaryGroup();
 
             report.close();
+            Files.writeString(Path.of(metricsPath), metrics.toJson());
 
             System.out.println("Izvestaj sacuvan u fajl: " + reportPath);
+            System.out.println("Metrike sacuvane u fajl: " + metricsPath);
 
         } catch (IOException e) {
             System.err.println("Greska prilikom generisanja izvestaja: " + e.getMessage());
         }
     }
 
+    // --batch <directory or glob> [--codec name] [--workers n] [--out directory] [--report file]
+    private static void runBatch(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Upotreba: --batch <direktorijum ili glob> [--codec ime] [--workers n] [--out direktorijum] [--report fajl]");
+            System.exit(2);
+        }
+        String input = args[1];
+        Codec codec = Codecs.AUTO;
+        int workers = Runtime.getRuntime().availableProcessors();
+        Path outputDir = Path.of("batch-out");
+        Path reportPath = Path.of("batch-report.json");
+        try {
+            for (int i = 2; i < args.length; i += 2) {
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+                }
+                switch (args[i]) {
+                    case "--codec" -> codec = Codecs.byName(args[i + 1]);
+                    case "--workers" -> workers = Integer.parseInt(args[i + 1]);
+                    case "--out" -> outputDir = Path.of(args[i + 1]);
+                    case "--report" -> reportPath = Path.of(args[i + 1]);
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+
+            BatchPipeline.Report batch = new BatchPipeline(codec, workers, outputDir).run(input);
+            Files.writeString(reportPath, batch.toJson());
+
+            System.out.printf("Obradjeno fajlova   : %d (%s, %d radnika)%n", batch.getFiles().size(), codec.getName(), workers);
+            System.out.printf("Ukupno              : %d -> %d bajtova%n", batch.getBytesIn(), batch.getBytesOut());
+            System.out.printf("Vreme               : %.2f s%n", batch.getWallNanos() / 1e9);
+            for (BatchPipeline.FileResult file : batch.getFiles()) {
+                if (!file.isVerified()) {
+                    System.out.printf("Neuspesno           : %s %s%n", file.getSource(),
+                            file.getError() != null ? file.getError() : "podaci se razlikuju");
+                }
+            }
+            if (batch.getWalkError() != null) {
+                System.out.printf("Obilazak prekinut   : %s%n", batch.getWalkError());
+            }
+            System.out.println("Izvestaj sacuvan u fajl: " + reportPath);
+            if (batch.getFailed() > 0 || batch.getWalkError() != null) {
+                System.exit(1);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Greska u paketnoj obradi: " + e.getMessage());
+            System.exit(2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.exit(2);
+        }
+    }
+
     private static void processAlgorithmGroup(String title, String file1, String file2, String extension) throws IOException {
         section(title);
         analyzeFile(file1, extension);
@@ -48,6 +135,52 @@ public class Main {
         report.println();
     }
 
+    // a dictionary pays off on many small messages that share their structure, so it is trained on one set
+    // of such messages and measured on another; neither sample file looks like that
+    private static void processDictionaryGroup() throws IOException {
+        section("RECNIK ZA MALE PORUKE");
+        List<byte[]> training = eventMessages(DICTIONARY_MESSAGES, 1);
+        List<byte[]> messages = eventMessages(DICTIONARY_MESSAGES, 2);
+        Dictionary dictionary = DictionaryTrainer.train(training);
+        logFormatted("Recnik              : %08x, %d bajtova, %d poruka za obuku%n",
+                dictionary.getId(), dictionary.getContent().length, training.size());
+        if (dictionary.getContent().length == 0) {
+            logFormatted("Recnik je prazan, poredjenje je preskoceno%n");
+            logLine();
+            report.println();
+            return;
+        }
+
+        String[] names = {"Huffman", "LZ77", "LZW"};
+        Codec[] codecs = {Codecs.HUFFMAN, Codecs.LZ77, Codecs.LZW};
+        long rawSize = 0;
+        long[] plainSize = new long[3], dictionarySize = new long[3];
+        boolean identical = true;
+        for (byte[] message : messages) {
+            rawSize += message.length;
+            for (int k = 0; k < 3; k++) {
+                ByteArrayOutputStream plain = new ByteArrayOutputStream();
+                codecs[k].encodeBlock(message, 0, message.length, plain);
+                plainSize[k] += plain.size();
+            }
+            byte[][] compressed = {HuffmanAlgorithm.compress(message, dictionary),
+                    LZ77Algorithm.compress(message, dictionary), LZWAlgorithm.compress(message, dictionary)};
+            identical &= Arrays.equals(message, HuffmanAlgorithm.decompress(compressed[0], dictionary))
+                    && Arrays.equals(message, LZ77Algorithm.decompress(compressed[1], dictionary))
+                    && Arrays.equals(message, LZWAlgorithm.decompress(compressed[2], dictionary));
+            for (int k = 0; k < 3; k++) {
+                dictionarySize[k] += compressed[k].length;
+            }
+        }
+        logFormatted("Poruke             : %d, ukupno %d bajtova%n", messages.size(), rawSize);
+        for (int k = 0; k < 3; k++) {
+            logFormatted("%-8s bez recnika: %7d, sa recnikom: %7d bajtova%n", names[k], plainSize[k], dictionarySize[k]);
+        }
+        logFormatted("Integritet poruka   : %s%n", identical ? "podaci identicni" : "podaci se razlikuju");
+        logLine();
+        report.println();
+    }
+
     private static void analyzeFile(String input, String ext) throws IOException {
         String compressed = input + ext;
         String decompressed = input + ext + ".dec";
@@ -60,36 +193,99 @@ public class Main {
 
         long compressedSize = Files.size(Path.of(compressed));
 
+        // every format carries checksums of the content, which decompression checks as it goes, so a
+        // decompression that finishes has reproduced the original without reading either file again
+        String verification = null;
         long startDecomp = System.nanoTime();
-        runDecompression(ext, compressed, decompressed);
+        try {
+            runDecompression(ext, compressed, decompressed);
+        } catch (IOException e) {
+            verification = e.getMessage();
+        }
         long endDecomp = System.nanoTime();
 
-        writeReportBlock(input, originalSize, compressedSize, endComp - startComp, endDecomp - startDecomp, decompressed);
+        writeReportBlock(input, originalSize, compressedSize, endComp - startComp, endDecomp - startDecomp, verification);
+        if (ext.equals(".auto")) {
+            checkRandomAccess(input, compressed);
+        }
+    }
+
+    // JSON events of the kind a service logs one by one: same keys, a few recurring values, varying numbers
+    private static List<byte[]> eventMessages(int count, long seed) {
+        String[] events = {"prijava", "odjava", "kupovina", "pretraga", "greska"};
+        String[] statuses = {"ok", "odbijeno", "na cekanju"};
+        String[] devices = {"android", "ios", "web"};
+        Random random = new Random(seed);
+        List<byte[]> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String message = String.format("{\"id\":%d,\"korisnik\":\"korisnik%04d\",\"dogadjaj\":\"%s\","
+                            + "\"status\":\"%s\",\"uredjaj\":\"%s\",\"iznos\":%d.%02d,"
+                            + "\"vreme\":\"2024-%02d-%02dT%02d:%02d:%02dZ\"}",
+                    100000 + random.nextInt(900000), random.nextInt(10000), events[random.nextInt(events.length)],
+                    statuses[random.nextInt(statuses.length)], devices[random.nextInt(devices.length)],
+                    random.nextInt(1000), random.nextInt(100), 1 + random.nextInt(12), 1 + random.nextInt(28),
+                    random.nextInt(24), random.nextInt(60), random.nextInt(60));
+            messages.add(message.getBytes(StandardCharsets.US_ASCII));
+        }
+        return messages;
+    }
+
+    // reads a range from the middle of the container without decompressing the rest
+    private static void checkRandomAccess(String original, String compressed) throws IOException {
+        byte[] data = Files.readAllBytes(Path.of(original));
+        int length = Math.min(data.length, 4096);
+        int offset = (data.length - length) / 2;
+        try (SeekableContainer container = SeekableContainer.open(Path.of(compressed))) {
+            long start = System.nanoTime();
+            byte[] range = container.readAt(offset, length);
+            long time = System.nanoTime() - start;
+            boolean identical = Arrays.equals(range, 0, length, data, offset, offset + length);
+            logFormatted("Nasumicni pristup   : %d bajtova od %d, %.2f ms, %s%n", length, offset, time / 1e6,
+                    identical ? "podaci identicni" : "podaci se razlikuju");
+            logLine();
+        }
     }
 
     private static void runCompression(String ext, String in, String out) throws IOException {
         switch (ext) {
             case ".huff" -> HuffmanAlgorithm.compress(in, out);
+            case ".huf4" -> BlockContainer.compress(Path.of(in), Path.of(out), Codecs.HUFFMAN_X4);
+            case ".ahuff" -> AdaptiveHuffmanAlgorithm.compress(in, out);
+            case ".fse" -> FseAlgorithm.compress(in, out);
+            case ".rc" -> RangeCoderAlgorithm.compress(in, out);
             case ".sf" -> ShannonFanoAlgorithm.compress(in, out);
             case ".lz77" -> LZ77Algorithm.compress(in, out);
             case ".lzw" -> LZWAlgorithm.compress(in, out);
+            case ".defl" -> DeflateAlgorithm.compress(in, out);
+            case ".lz77o" -> LZ77Algorithm.compress(in, out, LZ77Algorithm.DEFAULT_WINDOW_SIZE, LZ77Algorithm.OPTIMAL_LEVEL);
+            case ".deflo" -> DeflateAlgorithm.compress(in, out, LZ77Algorithm.DEFAULT_WINDOW_SIZE, LZ77Algorithm.OPTIMAL_LEVEL);
+            case ".auto" -> BlockContainer.compress(Path.of(in), Path.of(out), Codecs.AUTO);
+            case ".pipe" -> PipelinedContainer.compress(Path.of(in), Path.of(out), Codecs.AUTO);
         }
     }
 
     private static void runDecompression(String ext, String in, String out) throws IOException {
         switch (ext) {
             case ".huff" -> HuffmanAlgorithm.decompress(in, out);
+            case ".huf4" -> BlockContainer.decompress(Path.of(in), Path.of(out));
+            case ".ahuff" -> AdaptiveHuffmanAlgorithm.decompress(in, out);
+            case ".fse" -> FseAlgorithm.decompress(in, out);
+            case ".rc" -> RangeCoderAlgorithm.decompress(in, out);
             case ".sf" -> ShannonFanoAlgorithm.decompress(in, out);
             case ".lz77" -> LZ77Algorithm.decompress(in, out);
             case ".lzw" -> LZWAlgorithm.decompress(in, out);
+            case ".defl" -> DeflateAlgorithm.decompress(in, out);
+            case ".lz77o" -> LZ77Algorithm.decompress(in, out);
+            case ".deflo" -> DeflateAlgorithm.decompress(in, out);
+            case ".auto" -> BlockContainer.decompress(Path.of(in), Path.of(out));
+            case ".pipe" -> PipelinedContainer.decompress(Path.of(in), Path.of(out));
         }
     }
 
     private static void writeReportBlock(String fileName, long inSize, long compSize,
-                                         long compTime, long decompTime, String decompFile) throws IOException {
+                                         long compTime, long decompTime, String verification) {
 
         double ratio = (double) compSize / inSize;
-        boolean identical = filesMatch(fileName, decompFile);
 
         logFormatted("Datoteka: %s%n", fileName);
         logFormatted("Originalna velicina : %d bajtova%n", inSize);
@@ -97,14 +293,11 @@ public class Main {
         logFormatted("Kompresioni odnos   : %.4f%n", ratio);
         logFormatted("Vreme kompresije    : %.2f ms%n", compTime / 1e6);
         logFormatted("Vreme dekompresije  : %.2f ms%n", decompTime / 1e6);
-        logFormatted("Integritet fajla    : %s%n", identical ? "podaci identicni" : "podaci se razlikuju");
+        logFormatted("Integritet fajla    : %s%n", verification == null ? "podaci identicni"
+                : "podaci se razlikuju (" + verification + ")");
         logLine();
     }
 
-    private static boolean filesMatch(String f1, String f2) throws IOException {
-        return Arrays.equals(Files.readAllBytes(Path.of(f1)), Files.readAllBytes(Path.of(f2)));
-    }
-
     private static void section(String title) {
         String line = "-".repeat(60);
         System.out.println("\n" + title);
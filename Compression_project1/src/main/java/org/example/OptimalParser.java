@@ -0,0 +1,134 @@
+package org.example;
+
+import org.example.models.Token;
+import org.example.models.TokenSink;
+import org.example.util.HashChainMatchFinder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// the cheapest tokenization under a cost model: every position is reached by the cheapest chain of literals
+// and matches of every length the match finder offers, then the chain ending at the last position is emitted.
+// Inputs are parsed in chunks, which keeps the tables small; matches do not cross a chunk boundary.
+class OptimalParser {
+    static final int MAX_CHAIN = 1024;
+    // a match at least this long is taken as it is, without pricing the positions it covers
+    static final int NICE_LENGTH = 258;
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int UNREACHED = Integer.MAX_VALUE;
+
+    // prices in bits, for a format's tokens
+    interface CostModel {
+        // called before each chunk, after the tokens of the chunk before it went through update
+        void prepare(ByteBuffer data, int start, int end);
+
+        // a literal has length zero; symbol is Token.NO_SYMBOL for a match without a literal
+        int price(int length, int offset, int symbol);
+
+        void update(Token token);
+    }
+
+    private final int windowSize;
+    private final HashChainMatchFinder finder;
+    private final CostModel costs;
+    // whether a match may end a token; otherwise each match takes the literal after it along
+    private final boolean matchOnly;
+
+    // per position of the chunk: cheapest price of reaching it, and the step that does
+    private final int[] price = new int[CHUNK_SIZE + 1];
+    private final int[] stepLength = new int[CHUNK_SIZE + 1];
+    private final int[] stepOffset = new int[CHUNK_SIZE + 1];
+    private final int[] path = new int[CHUNK_SIZE + 1];
+    private final int[] matchLengths = new int[LZ77Algorithm.MAX_MATCH];
+    private final int[] matchOffsets = new int[LZ77Algorithm.MAX_MATCH];
+
+    OptimalParser(int windowSize, CostModel costs, boolean matchOnly) {
+        this.windowSize = windowSize;
+        this.finder = new HashChainMatchFinder(windowSize, MAX_CHAIN, NICE_LENGTH);
+        this.costs = costs;
+        this.matchOnly = matchOnly;
+    }
+
+    // encodes data[start, end); bytes before start only serve as match history
+    void parse(ByteBuffer data, int start, int end, TokenSink sink) throws IOException {
+        finder.reset(data);
+        int lastHashPosition = end - HashChainMatchFinder.MIN_MATCH;
+        for (int position = Math.max(0, start - windowSize); position < start && position <= lastHashPosition; position++) {
+            finder.insert(position);
+        }
+        for (int chunkStart = start; chunkStart < end; chunkStart += CHUNK_SIZE) {
+            int chunkEnd = Math.min(end, chunkStart + CHUNK_SIZE);
+            costs.prepare(data, chunkStart, chunkEnd);
+            parseChunk(data, chunkStart, chunkEnd, lastHashPosition);
+            emit(data, chunkStart, chunkEnd - chunkStart, sink);
+        }
+    }
+
+    private void parseChunk(ByteBuffer data, int chunkStart, int chunkEnd, int lastHashPosition) {
+        int n = chunkEnd - chunkStart;
+        int trailing = matchOnly ? 0 : 1;
+        Arrays.fill(price, 0, n + 1, UNREACHED);
+        price[0] = 0;
+
+        for (int i = 0; i < n; i++) {
+            int position = chunkStart + i;
+            int base = price[i];
+            relax(i + 1, base + costs.price(0, 0, data.get(position) & 0xFF), 0, 0);
+
+            int count = finder.findMatches(position, Math.min(LZ77Algorithm.MAX_MATCH, n - i - trailing),
+                    matchLengths, matchOffsets);
+            if (position <= lastHashPosition) {
+                finder.insert(position);
+            }
+            int length = HashChainMatchFinder.MIN_MATCH;
+            for (int k = 0; k < count; k++) {
+                int offset = matchOffsets[k];
+                for (; length <= matchLengths[k]; length++) {
+                    int symbol = matchOnly ? Token.NO_SYMBOL : data.get(position + length) & 0xFF;
+                    relax(i + length + trailing, base + costs.price(length, offset, symbol), length, offset);
+                }
+            }
+
+            if (count > 0 && matchLengths[count - 1] >= NICE_LENGTH) {
+                // jump to the end of the long match; the positions it covers still go into the chains
+                int next = i + matchLengths[count - 1] + trailing;
+                for (int skipped = position + 1; skipped < chunkStart + next && skipped <= lastHashPosition; skipped++) {
+                    finder.insert(skipped);
+                }
+                i = next - 1;
+            }
+        }
+    }
+
+    private void relax(int target, int cost, int length, int offset) {
+        if (cost < price[target]) {
+            price[target] = cost;
+            stepLength[target] = length;
+            stepOffset[target] = offset;
+        }
+    }
+
+    // follows the cheapest steps back from the end of the chunk, then hands them out front to back
+    private void emit(ByteBuffer data, int chunkStart, int n, TokenSink sink) throws IOException {
+        int steps = 0;
+        for (int i = n; i > 0; i -= stepLength[i] == 0 ? 1 : stepLength[i] + (matchOnly ? 0 : 1)) {
+            path[steps++] = i;
+        }
+        int i = 0;
+        while (steps > 0) {
+            int next = path[--steps];
+            int length = stepLength[next];
+            Token token;
+            if (length == 0) {
+                token = new Token(0, 0, data.get(chunkStart + i) & 0xFF);
+            } else {
+                token = new Token(stepOffset[next], length,
+                        matchOnly ? Token.NO_SYMBOL : data.get(chunkStart + i + length) & 0xFF);
+            }
+            costs.update(token);
+            sink.accept(token);
+            i = next;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package org.example;
+
+import org.example.metrics.Metrics;
+import org.example.util.BoundedByteArrayOutputStream;
+import org.example.util.ContentChecksums;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// adaptive arithmetic coding with a byte-oriented range coder (carry handled as in LZMA). Order 0 keeps a single
+// model of byte frequencies, order 1 one model per preceding byte. Nothing is stored besides the length and order.
+public class RangeCoderAlgorithm {
+    public static final String NAME = "range";
+    public static final int DEFAULT_ORDER = 1;
+    private static final int CHUNK_SIZE = 8192;
+
+    public static void compress(String inputPath, String outputPath) throws IOException {
+        compress(inputPath, outputPath, DEFAULT_ORDER);
+    }
+
+    public static void compress(String inputPath, String outputPath, int order) throws IOException {
+        checkOrder(order);
+        File inputFile = new File(inputPath);
+        long begin = Metrics.start();
+        ContentChecksums.Collector checksums = new ContentChecksums.Collector();
+        try (
+                InputStream in = checksums.checking(new FileInputStream(inputFile));
+                DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputPath)))
+        ) {
+            dos.writeLong(inputFile.length());
+            dos.writeByte(order);
+            Encoder encoder = new Encoder(dos);
+            Model model = new Model(order);
+            byte[] chunk = new byte[CHUNK_SIZE];
+            int n;
+            while ((n = in.read(chunk)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    model.encode(encoder, chunk[i] & 0xFF);
+                }
+            }
+            encoder.finish();
+            checksums.write(dos);
+        }
+        Metrics.fileEncoded(NAME + "-o" + order, inputPath, outputPath, begin);
+    }
+
+    public static void decompress(String inputPath, String outputPath) throws IOException {
+        long begin = Metrics.start();
+        int order;
+        ContentChecksums checksums = ContentChecksums.read(Path.of(inputPath));
+        try (
+                DataInputStream dis = new DataInputStream(new BufferedInputStream(
+                        checksums.compressedData(new FileInputStream(inputPath))));
+                BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(outputPath))
+        ) {
+            ContentChecksums.Verifier verifier = checksums.verifying(bos);
+            long length = dis.readLong();
+            order = dis.readUnsignedByte();
+            if (order > 1) {
+                throw new IOException("Invalid range coder order: " + order);
+            }
+            Decoder decoder = new Decoder(dis);
+            Model model = new Model(order);
+            for (long i = 0; i < length; i++) {
+                verifier.write(model.decode(decoder));
+            }
+            verifier.finish();
+        }
+        Metrics.fileDecoded(NAME + "-o" + order, inputPath, outputPath, begin);
+    }
+
+    public static void encodeBlock(byte[] data, int offset, int length, OutputStream out, int order) throws IOException {
+        checkOrder(order);
+        out.write(order);
+        Encoder encoder = new Encoder(out);
+        Model model = new Model(order);
+        for (int i = offset, end = offset + length; i < end; i++) {
+            model.encode(encoder, data[i] & 0xFF);
+        }
+        encoder.finish();
+    }
+
+    public static void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                                   byte[] dst, int dstOffset, int dstLength) throws IOException {
+        if (srcLength < 1 || (src[srcOffset] & 0xFF) > 1) {
+            throw new IOException("Invalid range coder block");
+        }
+        Model model = new Model(src[srcOffset]);
+        Decoder decoder = new Decoder(new ByteArrayInputStream(src, srcOffset + 1, srcLength - 1));
+        BoundedByteArrayOutputStream out = new BoundedByteArrayOutputStream(dst, dstOffset, dstLength);
+        for (int i = 0; i < dstLength; i++) {
+            out.write(model.decode(decoder));
+        }
+    }
+
+    private static void checkOrder(int order) {
+        if (order != 0 && order != 1) {
+            throw new IllegalArgumentException("Range coder order must be 0 or 1: " + order);
+        }
+    }
+
+    private static class Model {
+        private final Frequencies[] contexts;
+        private final int order;
+        private int previous;
+
+        Model(int order) {
+            this.order = order;
+            this.contexts = new Frequencies[order == 0 ? 1 : 256];
+        }
+
+        void encode(Encoder encoder, int symbol) throws IOException {
+            Frequencies frequencies = context();
+            encoder.encode(frequencies.cumulative(symbol), frequencies.frequency(symbol), frequencies.total());
+            frequencies.update(symbol);
+            previous = symbol;
+        }
+
+        int decode(Decoder decoder) throws IOException {
+            Frequencies frequencies = context();
+            int symbol = frequencies.find(decoder.decodeFrequency(frequencies.total()));
+            decoder.consume(frequencies.cumulative(symbol), frequencies.frequency(symbol));
+            frequencies.update(symbol);
+            previous = symbol;
+            return symbol;
+        }
+
+        // order-1 contexts are created on first use, so short inputs do not pay for all 256
+        private Frequencies context() {
+            int context = order == 0 ? 0 : previous;
+            if (contexts[context] == null) {
+                contexts[context] = new Frequencies();
+            }
+            return contexts[context];
+        }
+    }
+
+    // byte frequencies in a Fenwick tree, so cumulative counts and lookups take log2(256) steps
+    private static class Frequencies {
+        private static final int INCREMENT = 24;
+        // keeps range / total at 8 bits or more, since the range never drops below 2^24
+        private static final int MAX_TOTAL = 1 << 16;
+
+        private final int[] frequencies = new int[256];
+        private final int[] tree = new int[257];
+        private int total;
+
+        Frequencies() {
+            Arrays.fill(frequencies, 1);
+            rebuild();
+        }
+
+        int frequency(int symbol) {
+            return frequencies[symbol];
+        }
+
+        int total() {
+            return total;
+        }
+
+        // sum of the frequencies of all symbols below symbol
+        int cumulative(int symbol) {
+            int sum = 0;
+            for (int i = symbol; i > 0; i -= i & -i) {
+                sum += tree[i];
+            }
+            return sum;
+        }
+
+        // the symbol whose cumulative range holds value
+        int find(int value) {
+            int position = 0;
+            for (int step = 128; step > 0; step >>= 1) {
+                if (tree[position + step] <= value) {
+                    position += step;
+                    value -= tree[position];
+                }
+            }
+            return position;
+        }
+
+        void update(int symbol) {
+            frequencies[symbol] += INCREMENT;
+            total += INCREMENT;
+            if (total > MAX_TOTAL) {
+                for (int i = 0; i < 256; i++) {
+                    frequencies[i] = (frequencies[i] + 1) >>> 1;
+                }
+                rebuild();
+                return;
+            }
+            for (int i = symbol + 1; i <= 256; i += i & -i) {
+                tree[i] += INCREMENT;
+            }
+        }
+
+        private void rebuild() {
+            total = 0;
+            for (int i = 1; i <= 256; i++) {
+                tree[i] = frequencies[i - 1];
+                total += frequencies[i - 1];
+            }
+            for (int i = 1; i <= 256; i++) {
+                int parent = i + (i & -i);
+                if (parent <= 256) {
+                    tree[parent] += tree[i];
+                }
+            }
+        }
+    }
+
+    private static class Encoder {
+        private static final long TOP = 1L << 24;
+
+        private final OutputStream out;
+        // low has one bit above the 32 in use, which holds a carry until it reaches the cached bytes
+        private long low;
+        private long range = 0xFFFFFFFFL;
+        private int cache;
+        private long cacheSize = 1;
+
+        Encoder(OutputStream out) {
+            this.out = out;
+        }
+
+        void encode(int cumulative, int frequency, int total) throws IOException {
+            long r = range / total;
+            low += r * cumulative;
+            range = r * frequency;
+            while (range < TOP) {
+                range <<= 8;
+                shiftLow();
+            }
+        }
+
+        void finish() throws IOException {
+            for (int i = 0; i < 5; i++) {
+                shiftLow();
+            }
+            out.flush();
+        }
+
+        // a byte of 0xFF may still change through a carry, so runs of them are held back with the byte before
+        private void shiftLow() throws IOException {
+            if (low < 0xFF000000L || low > 0xFFFFFFFFL) {
+                int carry = (int) (low >>> 32);
+                int pending = cache;
+                do {
+                    out.write(pending + carry);
+                    pending = 0xFF;
+                } while (--cacheSize != 0);
+                cache = (int) (low >>> 24) & 0xFF;
+            }
+            cacheSize++;
+            low = (low & 0x00FFFFFFL) << 8;
+        }
+    }
+
+    private static class Decoder {
+        private final InputStream in;
+        private long code;
+        private long range = 0xFFFFFFFFL;
+        private long r;
+
+        Decoder(InputStream in) throws IOException {
+            this.in = in;
+            for (int i = 0; i < 5; i++) {
+                code = ((code << 8) | next()) & 0xFFFFFFFFL;
+            }
+        }
+
+        int decodeFrequency(int total) {
+            r = range / total;
+            return (int) Math.min(code / r, total - 1);
+        }
+
+        void consume(int cumulative, int frequency) throws IOException {
+            code -= r * cumulative;
+            range = r * frequency;
+            while (range < Encoder.TOP) {
+                code = ((code << 8) | next()) & 0xFFFFFFFFL;
+                range <<= 8;
+            }
+        }
+
+        // the encoder flushes every byte the decoder needs, so running off the end means truncated data
+        private int next() throws IOException {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Unexpected end of compressed data");
+            }
+            return b;
+        }
+    }
+}
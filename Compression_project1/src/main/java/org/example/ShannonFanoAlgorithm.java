@@ -1,139 +1,149 @@
 package org.example;
 
+import org.example.metrics.Metrics;
+import org.example.metrics.Phase;
 import org.example.models.FrequencyTable;
-import org.example.models.Symbol;
+import org.example.util.BitReader;
+import org.example.util.BitWriter;
+import org.example.util.CanonicalCode;
+import org.example.util.CodeLengthBuilder;
+import org.example.util.ContentChecksums;
+import org.example.util.HuffmanDecoder;
 
 import java.io.*;
-import java.util.*;
+import java.nio.file.Path;
 
 import static org.example.util.EntropyCalculator.calculateFrequency;
 
 public class ShannonFanoAlgorithm {
-    public static void compress(String inputPath, String outputPath) throws IOException {
-        FrequencyTable frequencyTable = calculateFrequency(new File(inputPath));
-        List<Symbol> symbols = collectSymbols(frequencyTable);
-
-        symbols.sort((a, b) -> Long.compare(b.getFrequency(), a.getFrequency()));
+    public static final String NAME = "shannon-fano";
+    private static final int MAX_CODE_LENGTH = HuffmanDecoder.MAX_CODE_LENGTH;
+    private static final int LENGTH_BITS = 5;
+    private static final int CHUNK_SIZE = 8192;
 
-        Map<Integer, String> codeMap = new HashMap<>();
-        generateCodes(symbols, codeMap, "");
+    // file layout: input length, then one bit stream holding the code table and the codes
+    public static void compress(String inputPath, String outputPath) throws IOException {
+        File inputFile = new File(inputPath);
+        long begin = Metrics.start();
+        byte[] codeLengths = computeCodeLengths(calculateFrequency(inputFile));
+        int[] codes = CanonicalCode.assignCodes(codeLengths);
+        Metrics.codeLengths(NAME, codeLengths);
 
+        ContentChecksums.Collector checksums = new ContentChecksums.Collector();
         try (
-                BufferedInputStream bis = new BufferedInputStream(new FileInputStream(inputPath));
+                BufferedInputStream bis = new BufferedInputStream(checksums.checking(new FileInputStream(inputPath)));
                 DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputPath)))
         ) {
-
-            dos.writeInt(codeMap.size());
-            for (Map.Entry<Integer, String> entry : codeMap.entrySet()) {
-                dos.writeByte(entry.getKey());
-                dos.writeUTF(entry.getValue());
-            }
-
-            StringBuilder encodedBits = new StringBuilder();
-            int dataByte;
-            while ((dataByte = bis.read()) != -1) {
-                encodedBits.append(codeMap.get(dataByte & 0xFF));
-            }
-
-            dos.writeInt(encodedBits.length());
-
-            int buffer = 0;
-            int bitCounter = 0;
-            for (int i = 0; i < encodedBits.length(); i++) {
-                buffer = (buffer << 1) | (encodedBits.charAt(i) == '1' ? 1 : 0);
-                bitCounter++;
-
-                if (bitCounter == 8) {
-                    dos.writeByte(buffer);
-                    buffer = 0;
-                    bitCounter = 0;
+            dos.writeLong(inputFile.length());
+            BitWriter writer = new BitWriter(dos);
+            writeCodeLengths(writer, codeLengths);
+
+            byte[] chunk = new byte[CHUNK_SIZE];
+            int n, dataByte;
+            while ((n = bis.read(chunk)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    dataByte = chunk[i] & 0xFF;
+                    writer.writeBits(codes[dataByte], codeLengths[dataByte]);
                 }
             }
-
-            if (bitCounter > 0) {
-                buffer <<= (8 - bitCounter);
-                dos.writeByte(buffer);
-            }
+            writer.flush();
+            checksums.write(dos);
         }
+        Metrics.fileEncoded(NAME, inputPath, outputPath, begin);
     }
 
     public static void decompress(String inputFile, String outputFile) throws IOException {
+        long begin = Metrics.start();
+        ContentChecksums checksums = ContentChecksums.read(Path.of(inputFile));
         try (
-                DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(inputFile)));
+                DataInputStream dis = new DataInputStream(new BufferedInputStream(
+                        checksums.compressedData(new FileInputStream(inputFile))));
                 BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(outputFile))
         ) {
-
-            int codeCount = dis.readInt();
-            if (codeCount <= 0) {
-                return;
-            }
-
-            Map<String, Integer> reverseCodeMap = new HashMap<>(codeCount);
-            for (int i = 0; i < codeCount; i++) {
-                int symbol = dis.readUnsignedByte();
-                String code = dis.readUTF();
-                reverseCodeMap.put(code, symbol);
-            }
-
-            int total = dis.readInt();
-            StringBuilder currentCode = new StringBuilder();
-
-            int bits = 0;
-            while (bits < total) {
-                int oneByte = dis.readUnsignedByte();
-                for (int j = 7; j >= 0 && bits < total; j--) {
-                    int bit = (oneByte >> j) & 1;
-                    currentCode.append(bit == 1 ? '1' : '0');
-
-                    Integer symbol = reverseCodeMap.get(currentCode.toString());
-                    if (symbol != null) {
-                        bos.write(symbol);
-                        currentCode.setLength(0);
+            ContentChecksums.Verifier verifier = checksums.verifying(bos);
+            long length = dis.readLong();
+            BitReader reader = new BitReader(dis);
+            byte[] codeLengths = readCodeLengths(reader);
+            // an empty input has no codes to build a decoder from
+            if (length > 0) {
+                HuffmanDecoder decoder = HuffmanDecoder.canonical(codeLengths);
+                byte[] out = new byte[CHUNK_SIZE];
+                long written = 0;
+                while (written < length) {
+                    int count = (int) Math.min(out.length, length - written);
+                    for (int i = 0; i < count; i++) {
+                        out[i] = (byte) decoder.decode(reader);
                     }
-                    bits++;
+                    verifier.write(out, 0, count);
+                    written += count;
                 }
             }
+            verifier.finish();
         }
+        Metrics.fileDecoded(NAME, inputFile, outputFile, begin);
     }
 
-    private static List<Symbol> collectSymbols(FrequencyTable freqTable) {
-        List<Symbol> symbols = new ArrayList<>();
-        for (int i = 0; i < 256; i++) {
-            long freq = freqTable.getCountForSymbol(i);
-            if (freq > 0) symbols.add(new Symbol(i, freq));
+    public static void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        long start = Metrics.start();
+        byte[] codeLengths = computeCodeLengths(calculateFrequency(data, offset, length));
+        int[] codes = CanonicalCode.assignCodes(codeLengths);
+        Metrics.codeLengths(NAME, codeLengths);
+        Metrics.phase(NAME, Phase.MODELING, start);
+
+        start = Metrics.start();
+        BitWriter writer = new BitWriter(out);
+        writeCodeLengths(writer, codeLengths);
+        int dataByte;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            dataByte = data[i] & 0xFF;
+            writer.writeBits(codes[dataByte], codeLengths[dataByte]);
         }
-        return symbols;
+        writer.flush();
+        Metrics.phase(NAME, Phase.BIT_OUTPUT, start);
     }
 
-    private static void generateCodes(List<Symbol> symbols, Map<Integer, String> codeMap, String prefix) {
-        if (symbols.size() == 1) {
-            Symbol s = symbols.get(0);
-            codeMap.put(s.getValue(), prefix.isEmpty() ? "0" : prefix);
+    public static void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                                   byte[] dst, int dstOffset, int dstLength) throws IOException {
+        BitReader reader = new BitReader(src, srcOffset, srcLength);
+        byte[] codeLengths = readCodeLengths(reader);
+        if (dstLength == 0) {
             return;
         }
+        HuffmanDecoder decoder = HuffmanDecoder.canonical(codeLengths);
+        for (int i = dstOffset, end = dstOffset + dstLength; i < end; i++) {
+            dst[i] = (byte) decoder.decode(reader);
+        }
+    }
 
-        int split = findSplitIndex(symbols);
-        List<Symbol> left = new ArrayList<>(symbols.subList(0, split));
-        List<Symbol> right = new ArrayList<>(symbols.subList(split, symbols.size()));
-
-        generateCodes(left, codeMap, prefix + "0");
-        generateCodes(right, codeMap, prefix + "1");
+    // the split tree only fixes the code lengths; codes are then assigned canonically, which keeps the sizes,
+    // lets the header carry lengths alone and lets the Huffman tables decode them
+    public static byte[] computeCodeLengths(FrequencyTable frequencyTable) {
+        return CodeLengthBuilder.shannonFano(frequencyTable.toArray(), MAX_CODE_LENGTH);
     }
 
-    private static int findSplitIndex(List<Symbol> symbols) {
-        long totalFreq = 0;
-        for (Symbol symbol : symbols) {
-            totalFreq += symbol.getFrequency();
+    // one presence bit per symbol, followed by its code length for symbols that occur
+    private static void writeCodeLengths(BitWriter writer, byte[] codeLengths) throws IOException {
+        for (int symbol = 0; symbol < 256; symbol++) {
+            if (codeLengths[symbol] > 0) {
+                writer.writeBits(1, 1);
+                writer.writeBits(codeLengths[symbol], LENGTH_BITS);
+            } else {
+                writer.writeBits(0, 1);
+            }
         }
+    }
 
-        long half = totalFreq / 2;
-        long acc = 0;
-        for (int i = 0; i < symbols.size(); i++) {
-            acc += symbols.get(i).getFrequency();
-            if (acc >= half) {
-                return i + 1;
+    private static byte[] readCodeLengths(BitReader reader) throws IOException {
+        byte[] codeLengths = new byte[256];
+        for (int symbol = 0; symbol < 256; symbol++) {
+            if (reader.readBits(1) == 1) {
+                int length = reader.readBits(LENGTH_BITS);
+                if (length == 0 || length > MAX_CODE_LENGTH) {
+                    throw new IOException("Invalid code length for symbol " + symbol + ": " + length);
+                }
+                codeLengths[symbol] = (byte) length;
             }
         }
-        return symbols.size();
+        return codeLengths;
     }
 }
@@ -0,0 +1,30 @@
+package org.example.codec;
+
+import org.example.AdaptiveHuffmanAlgorithm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class AdaptiveHuffmanCodec implements Codec {
+
+    @Override
+    public int getId() {
+        return 7;
+    }
+
+    @Override
+    public String getName() {
+        return AdaptiveHuffmanAlgorithm.NAME;
+    }
+
+    @Override
+    public void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        AdaptiveHuffmanAlgorithm.encodeBlock(data, offset, length, out);
+    }
+
+    @Override
+    public void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                            byte[] dst, int dstOffset, int dstLength) throws IOException {
+        AdaptiveHuffmanAlgorithm.decodeBlock(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+    }
+}
@@ -0,0 +1,155 @@
+package org.example.codec;
+
+import org.example.LZ77Algorithm;
+import org.example.models.FrequencyTable;
+import org.example.util.EntropyCalculator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// every block starts with a method byte: RAW, or the id of the codec that encoded the rest
+public class AutoCodec implements Codec {
+    static final int RAW = 0;
+
+    // two LZ77 windows, so repeats from anywhere in the window show up in the second half of the sample
+    static final int SAMPLE_SIZE = 2 * LZ77Algorithm.DEFAULT_WINDOW_SIZE;
+    private static final int MIN_SIZE = 64;
+    // order-0 entropy in bits per byte above which a block without repeats is not worth coding
+    private static final double RAW_ENTROPY = 7.9;
+    // share of sampled positions that start a repeat of an earlier 4-byte sequence
+    private static final double MIN_REPEATS = 0.05;
+    private static final int HUFFMAN_TABLE_SIZE = 128;
+    private static final int FSE_TABLE_SIZE = 64;
+    // FSE decodes a little slower than Huffman, so it has to save at least this share of the output
+    private static final double FSE_GAIN = 0.02;
+    // one slot per window position, so a sequence is rarely pushed out before a repeat can find it
+    private static final int REPEAT_HASH_BITS = 16;
+
+    @Override
+    public int getId() {
+        return 6;
+    }
+
+    @Override
+    public String getName() {
+        return "auto";
+    }
+
+    @Override
+    public void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        int method = chooseMethod(data, offset, length);
+        out.write(method);
+        if (method == RAW) {
+            out.write(data, offset, length);
+        } else {
+            CodecContext.forThread(method(method)).encodeBlock(data, offset, length, out);
+        }
+    }
+
+    @Override
+    public void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                            byte[] dst, int dstOffset, int dstLength) throws IOException {
+        if (srcLength < 1) {
+            throw new IOException("Truncated auto block");
+        }
+        int method = src[srcOffset] & 0xFF;
+        int payloadOffset = srcOffset + 1, payloadLength = srcLength - 1;
+        if (method != RAW) {
+            CodecContext.forThread(method(method)).decodeBlock(src, payloadOffset, payloadLength, dst, dstOffset, dstLength);
+        } else if (payloadLength == dstLength) {
+            System.arraycopy(src, payloadOffset, dst, dstOffset, dstLength);
+        } else {
+            throw new IOException("Raw block holds " + payloadLength + " bytes, expected " + dstLength);
+        }
+    }
+
+    static int chooseMethod(byte[] data, int offset, int length) throws IOException {
+        if (length < MIN_SIZE) {
+            return RAW;
+        }
+        FrequencyTable frequencyTable = EntropyCalculator.calculateFrequency(data, offset, length);
+        double entropy = EntropyCalculator.calculateEntropy(frequencyTable);
+        double huffmanSize = huffmanBits(frequencyTable, length) / 8 + HUFFMAN_TABLE_SIZE;
+        // tANS codes within a fraction of a percent of the entropy, also below one bit per symbol
+        double fseSize = entropy * length / 8 + FSE_TABLE_SIZE;
+        int entropyCoder = Codecs.HUFFMAN.getId();
+        double entropyCoderSize = huffmanSize;
+        if (fseSize < huffmanSize * (1 - FSE_GAIN)) {
+            entropyCoder = Codecs.FSE.getId();
+            entropyCoderSize = fseSize;
+        }
+
+        int sampleLength = Math.min(length, SAMPLE_SIZE);
+        int sampleOffset = offset + (length - sampleLength) / 2;
+        if (repeatFraction(data, sampleOffset, sampleLength) < MIN_REPEATS) {
+            // without repeats the dictionary coders cannot beat order-0 entropy
+            return entropy > RAW_ENTROPY || entropyCoderSize >= length ? RAW : entropyCoder;
+        }
+
+        // trial-compress a sample and scale the sizes up to the whole block; plain LZ77 is not tried,
+        // since deflate codes the same tokens with Huffman tables on top
+        double scale = (double) length / sampleLength;
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(sampleLength);
+        CodecContext.forThread(Codecs.DEFLATE).encodeBlock(data, sampleOffset, sampleLength, encoded);
+        double deflateSize = encoded.size() * scale;
+        encoded.reset();
+        CodecContext.forThread(Codecs.LZW).encodeBlock(data, sampleOffset, sampleLength, encoded);
+        double lzwSize = encoded.size() * scale;
+
+        int method = RAW;
+        double best = length;
+        if (entropyCoderSize < best) {
+            method = entropyCoder;
+            best = entropyCoderSize;
+        }
+        if (lzwSize < best) {
+            method = Codecs.LZW.getId();
+            best = lzwSize;
+        }
+        if (deflateSize < best) {
+            method = Codecs.DEFLATE.getId();
+        }
+        return method;
+    }
+
+    // order-0 entropy, except that a prefix code spends at least one bit on every symbol
+    private static double huffmanBits(FrequencyTable frequencyTable, int length) {
+        double bits = 0;
+        for (int symbol = 0; symbol < 256; symbol++) {
+            long count = frequencyTable.getCountForSymbol(symbol);
+            if (count > 0) {
+                bits += count * Math.max(1, Math.log((double) length / count) / Math.log(2));
+            }
+        }
+        return bits;
+    }
+
+    // samples how often a position repeats the four bytes last seen with the same hash, within the LZ77 window
+    static double repeatFraction(byte[] data, int offset, int length) {
+        if (length < 4) {
+            return 0;
+        }
+        int[] last = new int[1 << REPEAT_HASH_BITS];
+        int repeats = 0;
+        for (int i = offset, end = offset + length - 3; i < end; i++) {
+            int key = (data[i] & 0xFF) | (data[i + 1] & 0xFF) << 8 | (data[i + 2] & 0xFF) << 16 | data[i + 3] << 24;
+            int hash = (key * 0x9E3779B1) >>> (32 - REPEAT_HASH_BITS);
+            int candidate = last[hash] - 1;
+            if (candidate >= 0 && i - candidate <= LZ77Algorithm.DEFAULT_WINDOW_SIZE && data[candidate] == data[i] && data[candidate + 1] == data[i + 1]
+                    && data[candidate + 2] == data[i + 2] && data[candidate + 3] == data[i + 3]) {
+                repeats++;
+            }
+            last[hash] = i + 1;
+        }
+        return (double) repeats / (length - 3);
+    }
+
+    private static Codec method(int method) throws IOException {
+        if (method == Codecs.HUFFMAN.getId() || method == Codecs.LZ77.getId() || method == Codecs.LZW.getId()
+                || method == Codecs.DEFLATE.getId() || method == Codecs.FSE.getId()) {
+            return Codecs.byId(method);
+        }
+        throw new IOException("Unknown block method: " + method);
+    }
+}
@@ -0,0 +1,131 @@
+package org.example.codec;
+
+import org.example.metrics.Metrics;
+import org.example.metrics.Phase;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static org.example.util.ByteUtil.readFully;
+
+// layout: MAGIC, codec id, block size | independent frames | block index | index offset, MAGIC
+public class BlockContainer {
+    static final int MAGIC = 0x43504233;
+    static final int HEADER_SIZE = 9;
+    static final int TRAILER_SIZE = 12;
+
+    public static void compress(Path input, Path output, Codec codec) throws IOException {
+        compress(input, output, codec, Codec.DEFAULT_BLOCK_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static void compress(Path input, Path output, Codec codec, int blockSize, int parallelism)
+            throws IOException {
+        if (blockSize <= 0 || blockSize > BlockFormat.MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Invalid block size: " + blockSize);
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (
+                FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(output)))
+        ) {
+            out.writeInt(MAGIC);
+            out.writeByte(codec.getId());
+            out.writeInt(blockSize);
+
+            long size = in.size();
+            long blockCount = (size + blockSize - 1) / blockSize;
+            BlockIndex index = new BlockIndex((int) Math.min(blockCount, Integer.MAX_VALUE));
+            long position = HEADER_SIZE;
+
+            // blocks are encoded out of order but written in order; the queue bounds how many are in memory
+            Deque<Future<byte[]>> pending = new ArrayDeque<>();
+            int[] rawLengths = new int[2 * parallelism];
+            long written = 0;
+            for (long block = 0; block < blockCount; block++) {
+                int length = (int) Math.min(blockSize, size - block * blockSize);
+                byte[] data = new byte[length];
+                long start = Metrics.start();
+                readFully(in, block * blockSize, data, 0, length);
+                Metrics.phase(codec.getName(), Phase.IO, start);
+                rawLengths[(int) (block % rawLengths.length)] = length;
+                pending.add(pool.submit(() -> BlockFormat.encodeFrame(codec, data, length)));
+
+                if (pending.size() == rawLengths.length) {
+                    byte[] frame = await(pending.poll());
+                    start = Metrics.start();
+                    out.write(frame);
+                    Metrics.phase(codec.getName(), Phase.IO, start);
+                    index.add(position, frame.length, rawLengths[(int) (written++ % rawLengths.length)]);
+                    position += frame.length;
+                }
+            }
+            while (!pending.isEmpty()) {
+                byte[] frame = await(pending.poll());
+                long start = Metrics.start();
+                out.write(frame);
+                Metrics.phase(codec.getName(), Phase.IO, start);
+                index.add(position, frame.length, rawLengths[(int) (written++ % rawLengths.length)]);
+                position += frame.length;
+            }
+
+            index.write(out);
+            out.writeLong(position);
+            out.writeInt(MAGIC);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public static void decompress(Path input, Path output) throws IOException {
+        decompress(input, output, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static void decompress(Path input, Path output, int parallelism) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try (
+                ContainerFile container = ContainerFile.open(input);
+                OutputStream out = new BufferedOutputStream(Files.newOutputStream(output))
+        ) {
+            BlockIndex index = container.getIndex();
+            Deque<Future<byte[]>> pending = new ArrayDeque<>();
+            for (int block = 0; block < index.size(); block++) {
+                int current = block;
+                pending.add(pool.submit(() -> container.decodeBlock(current)));
+                if (pending.size() == 2 * parallelism) {
+                    out.write(await(pending.poll()));
+                }
+            }
+            while (!pending.isEmpty()) {
+                out.write(await(pending.poll()));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a block");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Block processing failed", e.getCause());
+        }
+    }
+}
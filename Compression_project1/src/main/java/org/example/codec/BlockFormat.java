@@ -0,0 +1,178 @@
+package org.example.codec;
+
+import org.example.metrics.Metrics;
+import org.example.util.BoundedByteArrayOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32C;
+
+import static org.example.util.ByteUtil.readVarInt;
+import static org.example.util.ByteUtil.writeVarInt;
+
+// stream layout: MAGIC, codec id, block size, then frames of
+// [type][raw length][CRC32C of the raw block][payload length, compressed frames only][payload]
+// closed by an END frame of [END][block count][total raw length]
+class BlockFormat {
+    static final int MAGIC = 0x43505333;
+    static final int MAX_BLOCK_SIZE = 1 << 26;
+    // type, checksum and two varint lengths of at most 4 bytes each under MAX_BLOCK_SIZE; a compressed
+    // payload is always shorter than the block, so no frame is longer than its block plus this
+    static final int MAX_FRAME_OVERHEAD = 13;
+
+    static final int END = 0;
+    static final int COMPRESSED = 1;
+    static final int STORED = 2;
+
+    static void writeHeader(OutputStream out, Codec codec, int blockSize) throws IOException {
+        out.write(MAGIC >>> 24);
+        out.write(MAGIC >>> 16);
+        out.write(MAGIC >>> 8);
+        out.write(MAGIC);
+        out.write(codec.getId());
+        writeVarInt(out, blockSize);
+    }
+
+    // returns the block size announced by the header
+    static int readHeader(DataInputStream in, Codec codec) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a compressed stream");
+        }
+        int id = in.readUnsignedByte();
+        if (id != codec.getId()) {
+            throw new IOException("Stream was written by codec " + Codecs.byId(id).getName()
+                    + ", not " + codec.getName());
+        }
+        int blockSize = readVarInt(in);
+        if (blockSize <= 0 || blockSize > MAX_BLOCK_SIZE) {
+            throw new IOException("Invalid block size: " + blockSize);
+        }
+        return blockSize;
+    }
+
+    // falls back to storing the block when the codec does not make it smaller
+    static void writeBlock(OutputStream out, byte[] block, int length, ByteArrayOutputStream encoded)
+            throws IOException {
+        int checksum = checksum(block, 0, length);
+        if (encoded.size() < length) {
+            out.write(COMPRESSED);
+            writeVarInt(out, length);
+            writeInt(out, checksum);
+            writeVarInt(out, encoded.size());
+            encoded.writeTo(out);
+        } else {
+            out.write(STORED);
+            writeVarInt(out, length);
+            writeInt(out, checksum);
+            out.write(block, 0, length);
+        }
+    }
+
+    // the end marker repeats how many blocks and bytes came before it, so a frame that went missing,
+    // or whose type byte turned into END, is caught
+    static void writeEnd(OutputStream out, long blocks, long rawLength) throws IOException {
+        out.write(END);
+        writeLong(out, blocks);
+        writeLong(out, rawLength);
+    }
+
+    // reads the rest of an END frame whose type byte has been consumed
+    static void checkEnd(DataInputStream in, long blocks, long rawLength) throws IOException {
+        long recordedBlocks = in.readLong();
+        long recordedLength = in.readLong();
+        if (recordedBlocks != blocks || recordedLength != rawLength) {
+            throw new IOException("Stream ended after " + blocks + " blocks of " + rawLength + " bytes, but "
+                    + recordedBlocks + " blocks of " + recordedLength + " bytes were written");
+        }
+    }
+
+    static int checksum(byte[] data, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+
+    // fails on the first block whose content does not match the checksum stored with it
+    static void verify(byte[] data, int length, int checksum) throws IOException {
+        if (checksum(data, 0, length) != checksum) {
+            throw new IOException("Checksum mismatch in block of " + length + " bytes");
+        }
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void writeLong(OutputStream out, long value) throws IOException {
+        writeInt(out, (int) (value >>> 32));
+        writeInt(out, (int) value);
+    }
+
+    static void encode(Codec codec, byte[] block, int length, ByteArrayOutputStream encoded) throws IOException {
+        long start = Metrics.start();
+        CodecContext.forThread(codec).encodeBlock(block, 0, length, encoded);
+        Metrics.blockEncoded(codec.getName(), length, encoded.size(), start);
+    }
+
+    static void decode(Codec codec, byte[] src, int srcOffset, int srcLength, byte[] dst, int dstLength)
+            throws IOException {
+        long start = Metrics.start();
+        CodecContext.forThread(codec).decodeBlock(src, srcOffset, srcLength, dst, 0, dstLength);
+        Metrics.blockDecoded(codec.getName(), srcLength, dstLength, start);
+    }
+
+    static byte[] encodeFrame(Codec codec, byte[] block, int length) throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        encode(codec, block, length, encoded);
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(Math.min(encoded.size(), length) + 12);
+        writeBlock(frame, block, length, encoded);
+        return frame.toByteArray();
+    }
+
+    // the same frame written into a caller's array of at least length + MAX_FRAME_OVERHEAD bytes, with
+    // encoded as scratch space; returns the frame length
+    static int encodeFrame(Codec codec, byte[] block, int length, ByteArrayOutputStream encoded, byte[] frame)
+            throws IOException {
+        encoded.reset();
+        encode(codec, block, length, encoded);
+        BoundedByteArrayOutputStream out = new BoundedByteArrayOutputStream(frame, 0, frame.length);
+        writeBlock(out, block, length, encoded);
+        return out.size();
+    }
+
+    // decodes one complete frame held in memory and returns the number of bytes written to dst
+    static int decodeFrame(byte[] frame, int frameLength, Codec codec, byte[] dst) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame, 0, frameLength));
+        int type = in.readUnsignedByte();
+        int length = readVarInt(in);
+        if (length > dst.length) {
+            throw new IOException("Block of " + length + " bytes exceeds block size " + dst.length);
+        }
+        int checksum = in.readInt();
+        int headerLength;
+        if (type == STORED) {
+            headerLength = frameLength - in.available();
+            if (frameLength - headerLength != length) {
+                throw new IOException("Stored block length mismatch");
+            }
+            System.arraycopy(frame, headerLength, dst, 0, length);
+        } else if (type == COMPRESSED) {
+            int encodedLength = readVarInt(in);
+            headerLength = frameLength - in.available();
+            if (frameLength - headerLength != encodedLength) {
+                throw new IOException("Compressed block length mismatch");
+            }
+            decode(codec, frame, headerLength, encodedLength, dst, length);
+        } else {
+            throw new IOException("Unknown block type: " + type);
+        }
+        verify(dst, length, checksum);
+        return length;
+    }
+}
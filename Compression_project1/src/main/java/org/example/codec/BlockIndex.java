@@ -0,0 +1,125 @@
+package org.example.codec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+// per-block positions of a container: where each frame starts in the file, how much data it holds
+// and where that data starts in the uncompressed stream
+// layout: [count][frame offset, frame length, raw length per block][total raw length]
+class BlockIndex {
+    // frame offset, frame length and raw length of one block
+    static final int ENTRY_SIZE = 16;
+    // the count before the entries and the total after them
+    private static final int FIXED_SIZE = 12;
+
+    private long[] frameOffsets;
+    private int[] frameLengths;
+    private int[] rawLengths;
+    private long[] rawOffsets;
+    private long rawSize;
+    private int count;
+
+    BlockIndex(int capacity) {
+        frameOffsets = new long[Math.max(capacity, 1)];
+        frameLengths = new int[Math.max(capacity, 1)];
+        rawLengths = new int[Math.max(capacity, 1)];
+        rawOffsets = new long[Math.max(capacity, 1)];
+    }
+
+    void add(long frameOffset, int frameLength, int rawLength) {
+        if (count == frameOffsets.length) {
+            frameOffsets = Arrays.copyOf(frameOffsets, count * 2);
+            frameLengths = Arrays.copyOf(frameLengths, count * 2);
+            rawLengths = Arrays.copyOf(rawLengths, count * 2);
+            rawOffsets = Arrays.copyOf(rawOffsets, count * 2);
+        }
+        frameOffsets[count] = frameOffset;
+        frameLengths[count] = frameLength;
+        rawLengths[count] = rawLength;
+        rawOffsets[count] = rawSize;
+        rawSize += rawLength;
+        count++;
+    }
+
+    int size() {
+        return count;
+    }
+
+    long getFrameOffset(int block) {
+        return frameOffsets[block];
+    }
+
+    int getFrameLength(int block) {
+        return frameLengths[block];
+    }
+
+    int getRawLength(int block) {
+        return rawLengths[block];
+    }
+
+    long getRawOffset(int block) {
+        return rawOffsets[block];
+    }
+
+    long getRawSize() {
+        return rawSize;
+    }
+
+    // the block holding the given uncompressed position, which must be below getRawSize()
+    int findBlock(long rawOffset) {
+        int low = 0, high = count - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (rawOffsets[middle] <= rawOffset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeLong(frameOffsets[i]);
+            out.writeInt(frameLengths[i]);
+            out.writeInt(rawLengths[i]);
+        }
+        out.writeLong(rawSize);
+    }
+
+    // indexLength is the size of the serialized index, which fixes the count before anything is allocated;
+    // the frames must follow one another from framesStart to framesEnd, where the index begins, and their
+    // raw lengths must add up to the stored total, so no block can be dropped or moved unnoticed
+    static BlockIndex read(DataInputStream in, int indexLength, int maxRawLength, long framesStart, long framesEnd)
+            throws IOException {
+        int count = in.readInt();
+        if (count < 0 || FIXED_SIZE + (long) count * ENTRY_SIZE != indexLength) {
+            throw new IOException("Invalid block count: " + count);
+        }
+        BlockIndex index = new BlockIndex(count);
+        long position = framesStart;
+        for (int i = 0; i < count; i++) {
+            long frameOffset = in.readLong();
+            int frameLength = in.readInt();
+            int rawLength = in.readInt();
+            if (frameOffset != position || frameLength <= 0 || frameLength > framesEnd - position
+                    || rawLength <= 0 || rawLength > maxRawLength) {
+                throw new IOException("Corrupt block index entry " + i);
+            }
+            index.add(frameOffset, frameLength, rawLength);
+            position += frameLength;
+        }
+        if (position != framesEnd) {
+            throw new IOException("Block index does not cover the frames");
+        }
+        long rawSize = in.readLong();
+        if (rawSize != index.getRawSize()) {
+            throw new IOException("Block index total " + rawSize + " does not match its blocks");
+        }
+        return index;
+    }
+}
@@ -0,0 +1,43 @@
+package org.example.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+public interface Codec {
+    int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    int getId();
+
+    String getName();
+
+    void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException;
+
+    // dstLength is the exact size of the original block
+    void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                     byte[] dst, int dstOffset, int dstLength) throws IOException;
+
+    // codecs with tables worth keeping between blocks return a context that holds on to them
+    default CodecContext newContext() {
+        return CodecContext.stateless(this);
+    }
+
+    default CompressorOutputStream newOutputStream(OutputStream out) {
+        return new CompressorOutputStream(out, this, DEFAULT_BLOCK_SIZE);
+    }
+
+    default DecompressorInputStream newInputStream(InputStream in) {
+        return new DecompressorInputStream(in, this);
+    }
+
+    default WritableByteChannel newWritableChannel(WritableByteChannel channel) {
+        return Channels.newChannel(newOutputStream(Channels.newOutputStream(channel)));
+    }
+
+    default ReadableByteChannel newReadableChannel(ReadableByteChannel channel) {
+        return Channels.newChannel(newInputStream(Channels.newInputStream(channel)));
+    }
+}
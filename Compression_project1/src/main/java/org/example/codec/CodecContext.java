@@ -0,0 +1,78 @@
+package org.example.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+// working state of one codec: tables and scratch buffers outlive a call, so coding many small inputs
+// does not allocate them again each time; a context serves one thread at a time
+public abstract class CodecContext {
+    private static final ThreadLocal<CodecContext[]> POOL = ThreadLocal.withInitial(() -> new CodecContext[256]);
+
+    private byte[] scratch = new byte[0];
+
+    // the calling thread's context for codec, created on first use
+    public static CodecContext forThread(Codec codec) {
+        CodecContext[] contexts = POOL.get();
+        CodecContext context = contexts[codec.getId()];
+        if (context == null) {
+            context = codec.newContext();
+            contexts[codec.getId()] = context;
+        }
+        return context;
+    }
+
+    // for codecs that keep nothing between calls
+    static CodecContext stateless(Codec codec) {
+        return new CodecContext() {
+            @Override
+            public void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException {
+                codec.encodeBlock(data, offset, length, out);
+            }
+
+            @Override
+            public void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                                    byte[] dst, int dstOffset, int dstLength) throws IOException {
+                codec.decodeBlock(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+            }
+        };
+    }
+
+    public abstract void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException;
+
+    public abstract void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                                     byte[] dst, int dstOffset, int dstLength) throws IOException;
+
+    // consumes the remaining bytes of data; heap buffers are coded in place, others through a scratch copy
+    public void encodeBlock(ByteBuffer data, OutputStream out) throws IOException {
+        int length = data.remaining();
+        if (data.hasArray()) {
+            encodeBlock(data.array(), data.arrayOffset() + data.position(), length, out);
+        } else {
+            byte[] copy = scratch(length);
+            data.get(data.position(), copy, 0, length);
+            encodeBlock(copy, 0, length, out);
+        }
+        data.position(data.limit());
+    }
+
+    // consumes the remaining bytes of src, which hold one encoded block of dstLength bytes
+    public void decodeBlock(ByteBuffer src, byte[] dst, int dstOffset, int dstLength) throws IOException {
+        int length = src.remaining();
+        if (src.hasArray()) {
+            decodeBlock(src.array(), src.arrayOffset() + src.position(), length, dst, dstOffset, dstLength);
+        } else {
+            byte[] copy = scratch(length);
+            src.get(src.position(), copy, 0, length);
+            decodeBlock(copy, 0, length, dst, dstOffset, dstLength);
+        }
+        src.position(src.limit());
+    }
+
+    private byte[] scratch(int length) {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, 2 * scratch.length)];
+        }
+        return scratch;
+    }
+}
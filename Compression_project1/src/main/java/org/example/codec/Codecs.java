@@ -0,0 +1,43 @@
+package org.example.codec;
+
+import java.io.IOException;
+import java.util.List;
+
+public class Codecs {
+    public static final Codec HUFFMAN = new HuffmanCodec();
+    public static final Codec SHANNON_FANO = new ShannonFanoCodec();
+    public static final Codec LZ77 = new LZ77Codec();
+    public static final Codec LZW = new LZWCodec();
+    public static final Codec DEFLATE = new DeflateCodec();
+    public static final Codec AUTO = new AutoCodec();
+    public static final Codec ADAPTIVE_HUFFMAN = new AdaptiveHuffmanCodec();
+    public static final Codec FSE = new FseCodec();
+    public static final Codec RANGE_ORDER0 = new RangeCoderCodec(0);
+    public static final Codec RANGE_ORDER1 = new RangeCoderCodec(1);
+    public static final Codec HUFFMAN_X4 = new InterleavedHuffmanCodec();
+
+    private static final List<Codec> ALL = List.of(HUFFMAN, SHANNON_FANO, LZ77, LZW, DEFLATE, AUTO, ADAPTIVE_HUFFMAN,
+            FSE, RANGE_ORDER0, RANGE_ORDER1, HUFFMAN_X4);
+
+    public static List<Codec> all() {
+        return ALL;
+    }
+
+    public static Codec byId(int id) throws IOException {
+        for (Codec codec : ALL) {
+            if (codec.getId() == id) {
+                return codec;
+            }
+        }
+        throw new IOException("Unknown codec id: " + id);
+    }
+
+    public static Codec byName(String name) {
+        for (Codec codec : ALL) {
+            if (codec.getName().equalsIgnoreCase(name)) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("Unknown codec: " + name);
+    }
+}
@@ -0,0 +1,106 @@
+package org.example.codec;
+
+import org.example.metrics.Metrics;
+import org.example.metrics.Phase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class CompressorOutputStream extends OutputStream {
+    private final OutputStream out;
+    private final Codec codec;
+    private final byte[] block;
+    private final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    private int count;
+    // blocks and bytes written so far, repeated in the end marker
+    private long blocks;
+    private long rawLength;
+    private boolean headerWritten;
+    private boolean finished;
+
+    public CompressorOutputStream(OutputStream out, Codec codec, int blockSize) {
+        if (blockSize <= 0 || blockSize > BlockFormat.MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Invalid block size: " + blockSize);
+        }
+        this.out = out;
+        this.codec = codec;
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        block[count++] = (byte) b;
+        if (count == block.length) {
+            writeBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            int n = Math.min(len, block.length - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == block.length) {
+                writeBlock();
+            }
+        }
+    }
+
+    // ends the current block early so everything written so far can be decoded on the other side
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        writeBlock();
+        out.flush();
+    }
+
+    // writes the end marker without closing the underlying stream
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        writeBlock();
+        BlockFormat.writeEnd(out, blocks, rawLength);
+        out.flush();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (!headerWritten) {
+            BlockFormat.writeHeader(out, codec, block.length);
+            headerWritten = true;
+        }
+        if (count == 0) {
+            return;
+        }
+        encoded.reset();
+        BlockFormat.encode(codec, block, count, encoded);
+        long start = Metrics.start();
+        BlockFormat.writeBlock(out, block, count, encoded);
+        Metrics.phase(codec.getName(), Phase.IO, start);
+        blocks++;
+        rawLength += count;
+        count = 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) {
+            throw new IOException("Stream already finished");
+        }
+    }
+}
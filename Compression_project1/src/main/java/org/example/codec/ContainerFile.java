@@ -0,0 +1,97 @@
+package org.example.codec;
+
+import org.example.metrics.Metrics;
+import org.example.metrics.Phase;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.example.util.ByteUtil.readFully;
+
+// read side of a block container; frames are fetched with positional reads so blocks can be decoded concurrently
+class ContainerFile implements Closeable {
+    private final FileChannel channel;
+    private final Codec codec;
+    private final int blockSize;
+    private final BlockIndex index;
+
+    private ContainerFile(FileChannel channel, Codec codec, int blockSize, BlockIndex index) {
+        this.channel = channel;
+        this.codec = codec;
+        this.blockSize = blockSize;
+        this.index = index;
+    }
+
+    static ContainerFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < BlockContainer.HEADER_SIZE + BlockContainer.TRAILER_SIZE) {
+                throw new IOException("Not a block container: " + path);
+            }
+            ByteBuffer header = ByteBuffer.allocate(BlockContainer.HEADER_SIZE);
+            readFully(channel, 0, header.array(), 0, BlockContainer.HEADER_SIZE);
+            ByteBuffer trailer = ByteBuffer.allocate(BlockContainer.TRAILER_SIZE);
+            readFully(channel, size - BlockContainer.TRAILER_SIZE, trailer.array(), 0, BlockContainer.TRAILER_SIZE);
+            if (header.getInt(0) != BlockContainer.MAGIC || trailer.getInt(8) != BlockContainer.MAGIC) {
+                throw new IOException("Not a block container: " + path);
+            }
+
+            Codec codec = Codecs.byId(header.get(4) & 0xFF);
+            int blockSize = header.getInt(5);
+            if (blockSize <= 0 || blockSize > BlockFormat.MAX_BLOCK_SIZE) {
+                throw new IOException("Invalid block size: " + blockSize);
+            }
+
+            long indexOffset = trailer.getLong(0);
+            long indexLength = size - BlockContainer.TRAILER_SIZE - indexOffset;
+            if (indexOffset < BlockContainer.HEADER_SIZE || indexLength < 0 || indexLength > Integer.MAX_VALUE) {
+                throw new IOException("Corrupt block index");
+            }
+            byte[] indexBytes = new byte[(int) indexLength];
+            readFully(channel, indexOffset, indexBytes, 0, indexBytes.length);
+            BlockIndex index = BlockIndex.read(new DataInputStream(new ByteArrayInputStream(indexBytes)),
+                    indexBytes.length, blockSize, BlockContainer.HEADER_SIZE, indexOffset);
+            return new ContainerFile(channel, codec, blockSize, index);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    Codec getCodec() {
+        return codec;
+    }
+
+    int getBlockSize() {
+        return blockSize;
+    }
+
+    BlockIndex getIndex() {
+        return index;
+    }
+
+    byte[] decodeBlock(int block) throws IOException {
+        int frameLength = index.getFrameLength(block);
+        byte[] frame = new byte[frameLength];
+        long start = Metrics.start();
+        readFully(channel, index.getFrameOffset(block), frame, 0, frameLength);
+        Metrics.phase(codec.getName(), Phase.IO, start);
+        byte[] data = new byte[index.getRawLength(block)];
+        if (BlockFormat.decodeFrame(frame, frameLength, codec, data) != data.length) {
+            throw new IOException("Block " + block + " does not match the index");
+        }
+        return data;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
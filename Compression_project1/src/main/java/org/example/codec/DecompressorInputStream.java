@@ -0,0 +1,107 @@
+package org.example.codec;
+
+import org.example.metrics.Metrics;
+import org.example.metrics.Phase;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.example.util.ByteUtil.readVarInt;
+
+public class DecompressorInputStream extends InputStream {
+    private final DataInputStream in;
+    private final Codec codec;
+    private byte[] block;
+    private byte[] encoded = new byte[0];
+    private int position;
+    private int limit;
+    // blocks and bytes decoded so far, checked against the end marker
+    private long blocks;
+    private long rawLength;
+    private boolean finished;
+
+    public DecompressorInputStream(InputStream in, Codec codec) {
+        this.in = new DataInputStream(in);
+        this.codec = codec;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && !nextBlock()) {
+            return -1;
+        }
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position == limit && !nextBlock()) {
+            return -1;
+        }
+        int n = Math.min(len, limit - position);
+        System.arraycopy(block, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private boolean nextBlock() throws IOException {
+        if (finished) {
+            return false;
+        }
+        if (block == null) {
+            block = new byte[BlockFormat.readHeader(in, codec)];
+        }
+        position = 0;
+        limit = 0;
+        while (limit == 0) {
+            int type = in.readUnsignedByte();
+            if (type == BlockFormat.END) {
+                BlockFormat.checkEnd(in, blocks, rawLength);
+                finished = true;
+                return false;
+            }
+            int length = readVarInt(in);
+            if (length > block.length) {
+                throw new IOException("Block of " + length + " bytes exceeds block size " + block.length);
+            }
+            int checksum = in.readInt();
+            long start = Metrics.start();
+            if (type == BlockFormat.STORED) {
+                in.readFully(block, 0, length);
+                Metrics.phase(codec.getName(), Phase.IO, start);
+            } else if (type == BlockFormat.COMPRESSED) {
+                int encodedLength = readVarInt(in);
+                if (encodedLength > length) {
+                    throw new IOException("Invalid compressed block length: " + encodedLength);
+                }
+                if (encoded.length < encodedLength) {
+                    encoded = new byte[block.length];
+                }
+                in.readFully(encoded, 0, encodedLength);
+                Metrics.phase(codec.getName(), Phase.IO, start);
+                BlockFormat.decode(codec, encoded, 0, encodedLength, block, length);
+            } else {
+                throw new IOException("Unknown block type: " + type);
+            }
+            BlockFormat.verify(block, length, checksum);
+            blocks++;
+            rawLength += length;
+            limit = length;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,30 @@
+package org.example.codec;
+
+import org.example.DeflateAlgorithm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class DeflateCodec implements Codec {
+
+    @Override
+    public int getId() {
+        return 5;
+    }
+
+    @Override
+    public String getName() {
+        return DeflateAlgorithm.NAME;
+    }
+
+    @Override
+    public void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        DeflateAlgorithm.encodeBlock(data, offset, length, out);
+    }
+
+    @Override
+    public void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                            byte[] dst, int dstOffset, int dstLength) throws IOException {
+        DeflateAlgorithm.decodeBlock(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+    }
+}
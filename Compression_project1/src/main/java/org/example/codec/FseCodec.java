@@ -0,0 +1,30 @@
+package org.example.codec;
+
+import org.example.FseAlgorithm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class FseCodec implements Codec {
+
+    @Override
+    public int getId() {
+        return 8;
+    }
+
+    @Override
+    public String getName() {
+        return FseAlgorithm.NAME;
+    }
+
+    @Override
+    public void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        FseAlgorithm.encodeBlock(data, offset, length, out);
+    }
+
+    @Override
+    public void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                            byte[] dst, int dstOffset, int dstLength) throws IOException {
+        FseAlgorithm.decodeBlock(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+    }
+}
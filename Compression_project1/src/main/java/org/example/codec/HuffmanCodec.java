@@ -0,0 +1,35 @@
+package org.example.codec;
+
+import org.example.HuffmanAlgorithm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class HuffmanCodec implements Codec {
+
+    @Override
+    public int getId() {
+        return 1;
+    }
+
+    @Override
+    public String getName() {
+        return HuffmanAlgorithm.NAME;
+    }
+
+    @Override
+    public void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        HuffmanAlgorithm.encodeBlock(data, offset, length, out);
+    }
+
+    @Override
+    public void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                            byte[] dst, int dstOffset, int dstLength) throws IOException {
+        HuffmanAlgorithm.decodeBlock(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+    }
+
+    @Override
+    public CodecContext newContext() {
+        return new HuffmanAlgorithm.Context();
+    }
+}
@@ -0,0 +1,35 @@
+package org.example.codec;
+
+import org.example.InterleavedHuffmanAlgorithm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class InterleavedHuffmanCodec implements Codec {
+
+    @Override
+    public int getId() {
+        return 11;
+    }
+
+    @Override
+    public String getName() {
+        return InterleavedHuffmanAlgorithm.NAME;
+    }
+
+    @Override
+    public void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        InterleavedHuffmanAlgorithm.encodeBlock(data, offset, length, out);
+    }
+
+    @Override
+    public void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                            byte[] dst, int dstOffset, int dstLength) throws IOException {
+        InterleavedHuffmanAlgorithm.decodeBlock(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+    }
+
+    @Override
+    public CodecContext newContext() {
+        return new InterleavedHuffmanAlgorithm.Context();
+    }
+}
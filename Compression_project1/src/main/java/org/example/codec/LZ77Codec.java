@@ -0,0 +1,35 @@
+package org.example.codec;
+
+import org.example.LZ77Algorithm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class LZ77Codec implements Codec {
+
+    @Override
+    public int getId() {
+        return 3;
+    }
+
+    @Override
+    public String getName() {
+        return LZ77Algorithm.NAME;
+    }
+
+    @Override
+    public void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        LZ77Algorithm.encodeBlock(data, offset, length, out);
+    }
+
+    @Override
+    public void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                            byte[] dst, int dstOffset, int dstLength) throws IOException {
+        LZ77Algorithm.decodeBlock(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+    }
+
+    @Override
+    public CodecContext newContext() {
+        return new LZ77Algorithm.Context();
+    }
+}
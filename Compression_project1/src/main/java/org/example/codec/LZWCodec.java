@@ -0,0 +1,35 @@
+package org.example.codec;
+
+import org.example.LZWAlgorithm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class LZWCodec implements Codec {
+
+    @Override
+    public int getId() {
+        return 4;
+    }
+
+    @Override
+    public String getName() {
+        return LZWAlgorithm.NAME;
+    }
+
+    @Override
+    public void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        LZWAlgorithm.encodeBlock(data, offset, length, out);
+    }
+
+    @Override
+    public void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                            byte[] dst, int dstOffset, int dstLength) throws IOException {
+        LZWAlgorithm.decodeBlock(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+    }
+
+    @Override
+    public CodecContext newContext() {
+        return new LZWAlgorithm.Context();
+    }
+}
@@ -0,0 +1,267 @@
+package org.example.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// the block container format with reading, coding and writing overlapped: reads and writes are issued on
+// AsynchronousFileChannels while a pool codes the blocks already in memory. A fixed set of block buffers
+// is handed from stage to stage and back, which bounds both the memory used and how far reads run ahead.
+public class PipelinedContainer {
+    private static final int POLL_MILLIS = 100;
+
+    public static void compress(Path input, Path output, Codec codec) throws IOException {
+        compress(input, output, codec, Codec.DEFAULT_BLOCK_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    // a reader thread fills free buffers and starts encoding each one as its read completes; the calling
+    // thread is the writer, taking frames in block order and writing them behind one another
+    public static void compress(Path input, Path output, Codec codec, int blockSize, int parallelism)
+            throws IOException {
+        if (blockSize <= 0 || blockSize > BlockFormat.MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Invalid block size: " + blockSize);
+        }
+        int depth = 2 * parallelism + 2;
+        ExecutorService encoders = Executors.newFixedThreadPool(parallelism);
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try (
+                AsynchronousFileChannel in = AsynchronousFileChannel.open(input, StandardOpenOption.READ);
+                AsynchronousFileChannel out = AsynchronousFileChannel.open(output, StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)
+        ) {
+            long size = in.size();
+            long blockCount = (size + blockSize - 1) / blockSize;
+            BlockingQueue<Block> free = new ArrayBlockingQueue<>(depth);
+            for (int i = 0; i < depth; i++) {
+                free.add(new Block((int) Math.min(blockSize, Math.max(size, 1))));
+            }
+            // blocks in the order they were read, which is the order their frames go out in
+            BlockingQueue<Block> ordered = new ArrayBlockingQueue<>(depth);
+
+            Future<?> reading = reader.submit(() -> {
+                for (long block = 0; block < blockCount; block++) {
+                    Block buffer = free.take();
+                    int length = (int) Math.min(blockSize, size - block * blockSize);
+                    buffer.length = length;
+                    buffer.frameLength = readFully(in, ByteBuffer.wrap(buffer.data, 0, length), block * blockSize)
+                            .thenApplyAsync(ignored -> encode(codec, buffer), encoders);
+                    ordered.put(buffer);
+                }
+                return null;
+            });
+
+            ByteBuffer header = ByteBuffer.allocate(BlockContainer.HEADER_SIZE);
+            header.putInt(BlockContainer.MAGIC).put((byte) codec.getId()).putInt(blockSize).flip();
+            Deque<CompletableFuture<Void>> writes = new ArrayDeque<>();
+            writes.add(writeFully(out, header, 0));
+
+            BlockIndex index = new BlockIndex((int) Math.min(blockCount, Integer.MAX_VALUE));
+            long position = BlockContainer.HEADER_SIZE;
+            for (long block = 0; block < blockCount; block++) {
+                Block buffer = next(ordered, reading);
+                int frameLength = join(buffer.frameLength);
+                index.add(position, frameLength, buffer.length);
+                // the buffer goes back once its frame is on disk, so frames waiting to be written count too
+                writes.add(writeFully(out, ByteBuffer.wrap(buffer.frame, 0, frameLength), position)
+                        .whenComplete((ignored, error) -> free.add(buffer)));
+                position += frameLength;
+                while (writes.size() > depth || (!writes.isEmpty() && writes.peek().isDone())) {
+                    join(writes.poll());
+                }
+            }
+            join(reading);
+
+            ByteArrayOutputStream trailer = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(trailer);
+            index.write(dos);
+            dos.writeLong(position);
+            dos.writeInt(BlockContainer.MAGIC);
+            writes.add(writeFully(out, ByteBuffer.wrap(trailer.toByteArray()), position));
+            while (!writes.isEmpty()) {
+                join(writes.poll());
+            }
+        } finally {
+            reader.shutdownNow();
+            encoders.shutdownNow();
+        }
+    }
+
+    public static void decompress(Path input, Path output) throws IOException {
+        decompress(input, output, Runtime.getRuntime().availableProcessors());
+    }
+
+    // the calling thread starts a frame read for every free buffer; each block is decoded as its frame
+    // arrives and written straight to its place in the output, so blocks may finish in any order
+    public static void decompress(Path input, Path output, int parallelism) throws IOException {
+        int depth = 2 * parallelism + 2;
+        ExecutorService decoders = Executors.newFixedThreadPool(parallelism);
+        try (
+                ContainerFile container = ContainerFile.open(input);
+                AsynchronousFileChannel in = AsynchronousFileChannel.open(input, StandardOpenOption.READ);
+                AsynchronousFileChannel out = AsynchronousFileChannel.open(output, StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)
+        ) {
+            BlockIndex index = container.getIndex();
+            Codec codec = container.getCodec();
+            BlockingQueue<Block> free = new ArrayBlockingQueue<>(depth);
+            for (int i = 0; i < depth; i++) {
+                free.add(new Block((int) Math.min(container.getBlockSize(), Math.max(index.getRawSize(), 1))));
+            }
+
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            for (int block = 0; block < index.size() && !failed.isDone(); block++) {
+                Block buffer = take(free);
+                int current = block;
+                int frameLength = index.getFrameLength(block);
+                if (frameLength > buffer.frame.length) {
+                    free.add(buffer);
+                    failed.completeExceptionally(new IOException("Frame of block " + block + " is longer than any block"));
+                    break;
+                }
+                buffer.length = index.getRawLength(block);
+                readFully(in, ByteBuffer.wrap(buffer.frame, 0, frameLength), index.getFrameOffset(block))
+                        .thenApplyAsync(ignored -> decode(codec, buffer, frameLength, current), decoders)
+                        .thenCompose(length -> writeFully(out, ByteBuffer.wrap(buffer.data, 0, length),
+                                index.getRawOffset(current)))
+                        .whenComplete((ignored, error) -> {
+                            if (error != null) {
+                                failed.completeExceptionally(error);
+                            }
+                            free.add(buffer);
+                        });
+            }
+            // every buffer back means every block has been written
+            for (int i = 0; i < depth; i++) {
+                take(free);
+            }
+            if (failed.isDone()) {
+                join(failed);
+            }
+        } finally {
+            decoders.shutdownNow();
+        }
+    }
+
+    private static int encode(Codec codec, Block buffer) {
+        try {
+            return BlockFormat.encodeFrame(codec, buffer.data, buffer.length, buffer.encoded, buffer.frame);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static int decode(Codec codec, Block buffer, int frameLength, int block) {
+        try {
+            if (BlockFormat.decodeFrame(buffer.frame, frameLength, codec, buffer.data) != buffer.length) {
+                throw new IOException("Block " + block + " does not match the index");
+            }
+            return buffer.length;
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    // reads until buffer is full; positional, so several reads of one file can be outstanding
+    private static CompletableFuture<Void> readFully(AsynchronousFileChannel channel, ByteBuffer buffer, long position) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        channel.read(buffer, position, position, new CompletionHandler<>() {
+            @Override
+            public void completed(Integer n, Long at) {
+                if (n < 0) {
+                    done.completeExceptionally(new EOFException("Unexpected end of file at " + at));
+                } else if (buffer.hasRemaining()) {
+                    channel.read(buffer, at + n, at + n, this);
+                } else {
+                    done.complete(null);
+                }
+            }
+
+            @Override
+            public void failed(Throwable error, Long at) {
+                done.completeExceptionally(error);
+            }
+        });
+        return done;
+    }
+
+    private static CompletableFuture<Void> writeFully(AsynchronousFileChannel channel, ByteBuffer buffer, long position) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        channel.write(buffer, position, position, new CompletionHandler<>() {
+            @Override
+            public void completed(Integer n, Long at) {
+                if (buffer.hasRemaining()) {
+                    channel.write(buffer, at + n, at + n, this);
+                } else {
+                    done.complete(null);
+                }
+            }
+
+            @Override
+            public void failed(Throwable error, Long at) {
+                done.completeExceptionally(error);
+            }
+        });
+        return done;
+    }
+
+    // waits for the next block, giving up once the stage that fills the queue has failed
+    private static Block next(BlockingQueue<Block> queue, Future<?> feeder) throws IOException {
+        try {
+            Block block;
+            while ((block = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                if (feeder.isDone()) {
+                    join(feeder);
+                }
+            }
+            return block;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a block");
+        }
+    }
+
+    private static Block take(BlockingQueue<Block> queue) throws IOException {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a block");
+        }
+    }
+
+    private static <T> T join(Future<T> future) throws IOException {
+        return BlockContainer.await(future);
+    }
+
+    // one block on its way through the pipeline; the arrays are reused by the blocks after it, and frame
+    // has room for the longest frame a block of data can take
+    private static class Block {
+        private final byte[] data;
+        private final byte[] frame;
+        private final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        private int length;
+        private CompletableFuture<Integer> frameLength;
+
+        private Block(int capacity) {
+            data = new byte[capacity];
+            frame = new byte[capacity + BlockFormat.MAX_FRAME_OVERHEAD];
+        }
+    }
+}
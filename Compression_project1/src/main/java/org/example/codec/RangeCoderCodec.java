@@ -0,0 +1,35 @@
+package org.example.codec;
+
+import org.example.RangeCoderAlgorithm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class RangeCoderCodec implements Codec {
+    private final int order;
+
+    RangeCoderCodec(int order) {
+        this.order = order;
+    }
+
+    @Override
+    public int getId() {
+        return 9 + order;
+    }
+
+    @Override
+    public String getName() {
+        return RangeCoderAlgorithm.NAME + "-o" + order;
+    }
+
+    @Override
+    public void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        RangeCoderAlgorithm.encodeBlock(data, offset, length, out, order);
+    }
+
+    @Override
+    public void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                            byte[] dst, int dstOffset, int dstLength) throws IOException {
+        RangeCoderAlgorithm.decodeBlock(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+    }
+}
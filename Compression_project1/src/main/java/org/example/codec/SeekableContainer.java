@@ -0,0 +1,99 @@
+package org.example.codec;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// random access into a block container: a read decodes only the blocks it overlaps, found through the index.
+// Recently decoded blocks are kept in an LRU cache, so reads that stay in a hot range skip decoding.
+public class SeekableContainer implements Closeable {
+    public static final int DEFAULT_CACHE_BLOCKS = 16;
+
+    private final ContainerFile container;
+    private final BlockIndex index;
+    private final Map<Integer, byte[]> cache;
+
+    private SeekableContainer(ContainerFile container, int cacheBlocks) {
+        this.container = container;
+        this.index = container.getIndex();
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+                return size() > cacheBlocks;
+            }
+        };
+    }
+
+    public static SeekableContainer open(Path path) throws IOException {
+        return open(path, DEFAULT_CACHE_BLOCKS);
+    }
+
+    // a cache of zero blocks decodes every read from the file
+    public static SeekableContainer open(Path path, int cacheBlocks) throws IOException {
+        if (cacheBlocks < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative: " + cacheBlocks);
+        }
+        return new SeekableContainer(ContainerFile.open(path), cacheBlocks);
+    }
+
+    public Codec getCodec() {
+        return container.getCodec();
+    }
+
+    // uncompressed size of the whole container
+    public long size() {
+        return index.getRawSize();
+    }
+
+    public byte[] readAt(long uncompressedOffset, int length) throws IOException {
+        byte[] data = new byte[length];
+        readAt(uncompressedOffset, data, 0, length);
+        return data;
+    }
+
+    public void readAt(long uncompressedOffset, byte[] dst, int dstOffset, int length) throws IOException {
+        if (uncompressedOffset < 0 || length < 0) {
+            throw new IllegalArgumentException("Invalid range: offset " + uncompressedOffset + ", length " + length);
+        }
+        if (uncompressedOffset + length > size()) {
+            throw new EOFException("Range " + uncompressedOffset + "+" + length + " ends past " + size());
+        }
+        if (length == 0) {
+            return;
+        }
+        long position = uncompressedOffset;
+        int remaining = length;
+        for (int block = index.findBlock(position); remaining > 0; block++) {
+            byte[] data = block(block);
+            int start = (int) (position - index.getRawOffset(block));
+            int n = Math.min(remaining, data.length - start);
+            System.arraycopy(data, start, dst, dstOffset, n);
+            dstOffset += n;
+            position += n;
+            remaining -= n;
+        }
+    }
+
+    // blocks are decoded outside the lock, so threads reading different blocks do not wait for each other
+    private byte[] block(int block) throws IOException {
+        synchronized (cache) {
+            byte[] data = cache.get(block);
+            if (data != null) {
+                return data;
+            }
+        }
+        byte[] data = container.decodeBlock(block);
+        synchronized (cache) {
+            cache.put(block, data);
+        }
+        return data;
+    }
+
+    @Override
+    public void close() throws IOException {
+        container.close();
+    }
+}
@@ -0,0 +1,30 @@
+package org.example.codec;
+
+import org.example.ShannonFanoAlgorithm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class ShannonFanoCodec implements Codec {
+
+    @Override
+    public int getId() {
+        return 2;
+    }
+
+    @Override
+    public String getName() {
+        return ShannonFanoAlgorithm.NAME;
+    }
+
+    @Override
+    public void encodeBlock(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        ShannonFanoAlgorithm.encodeBlock(data, offset, length, out);
+    }
+
+    @Override
+    public void decodeBlock(byte[] src, int srcOffset, int srcLength,
+                            byte[] dst, int dstOffset, int dstLength) throws IOException {
+        ShannonFanoAlgorithm.decodeBlock(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+    }
+}
@@ -0,0 +1,29 @@
+package org.example.metrics;
+
+// codec names match Codec.getName(); every method has an empty default so listeners pick what they need
+public interface CodecListener {
+
+    // a block is also a whole file when it goes through a file-path compress or decompress
+    default void blockEncoded(String codec, long rawLength, long encodedLength, long nanos) {
+    }
+
+    default void blockDecoded(String codec, long encodedLength, long rawLength, long nanos) {
+    }
+
+    default void phase(String codec, Phase phase, long nanos) {
+    }
+
+    // histogram[length] is the number of tokens with that match length in one block or file; [0] counts plain literals
+    default void matchLengths(String codec, int[] histogram) {
+    }
+
+    // code length per symbol of one freshly built table, zero for unused symbols
+    default void codeLengths(String codec, byte[] lengths) {
+    }
+
+    default void dictionaryFull(String codec, long inputPosition) {
+    }
+
+    default void dictionaryReset(String codec, long inputPosition) {
+    }
+}
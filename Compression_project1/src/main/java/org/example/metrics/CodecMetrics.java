@@ -0,0 +1,121 @@
+package org.example.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// counters for one codec; bytesIn and bytesOut count raw and encoded bytes of encoded blocks,
+// decodeBytesIn and decodeBytesOut the encoded and raw bytes of decoded ones
+public class CodecMetrics implements CodecMetricsMXBean {
+    static final int MAX_MATCH_LENGTH = 258;
+    static final int MAX_CODE_LENGTH = 32;
+
+    final LongAdder blocksEncoded = new LongAdder();
+    final LongAdder blocksDecoded = new LongAdder();
+    final LongAdder bytesIn = new LongAdder();
+    final LongAdder bytesOut = new LongAdder();
+    final LongAdder decodeBytesIn = new LongAdder();
+    final LongAdder decodeBytesOut = new LongAdder();
+    final LongAdder encodeNanos = new LongAdder();
+    final LongAdder decodeNanos = new LongAdder();
+    final LongAdder[] phaseNanos = new LongAdder[Phase.values().length];
+    final LongAdder dictionaryFull = new LongAdder();
+    final LongAdder dictionaryResets = new LongAdder();
+    final AtomicLongArray matchLengths = new AtomicLongArray(MAX_MATCH_LENGTH + 1);
+    // number of symbols that were given each code length
+    final AtomicLongArray codeLengths = new AtomicLongArray(MAX_CODE_LENGTH + 1);
+
+    CodecMetrics() {
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public long getBlocksEncoded() {
+        return blocksEncoded.sum();
+    }
+
+    @Override
+    public long getBlocksDecoded() {
+        return blocksDecoded.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getDecodeBytesIn() {
+        return decodeBytesIn.sum();
+    }
+
+    @Override
+    public long getDecodeBytesOut() {
+        return decodeBytesOut.sum();
+    }
+
+    @Override
+    public double getCompressionRatio() {
+        long in = bytesIn.sum();
+        return in == 0 ? 0 : (double) bytesOut.sum() / in;
+    }
+
+    @Override
+    public long getEncodeNanos() {
+        return encodeNanos.sum();
+    }
+
+    @Override
+    public long getDecodeNanos() {
+        return decodeNanos.sum();
+    }
+
+    @Override
+    public long getModelingNanos() {
+        return phaseNanos[Phase.MODELING.ordinal()].sum();
+    }
+
+    @Override
+    public long getBitOutputNanos() {
+        return phaseNanos[Phase.BIT_OUTPUT.ordinal()].sum();
+    }
+
+    @Override
+    public long getIoNanos() {
+        return phaseNanos[Phase.IO.ordinal()].sum();
+    }
+
+    @Override
+    public long getDictionaryFullEvents() {
+        return dictionaryFull.sum();
+    }
+
+    @Override
+    public long getDictionaryResets() {
+        return dictionaryResets.sum();
+    }
+
+    @Override
+    public long[] getMatchLengthHistogram() {
+        return toArray(matchLengths);
+    }
+
+    @Override
+    public long[] getCodeLengthHistogram() {
+        return toArray(codeLengths);
+    }
+
+    private static long[] toArray(AtomicLongArray array) {
+        long[] values = new long[array.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = array.get(i);
+        }
+        return values;
+    }
+}
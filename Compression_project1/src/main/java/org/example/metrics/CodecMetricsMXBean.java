@@ -0,0 +1,36 @@
+package org.example.metrics;
+
+public interface CodecMetricsMXBean {
+
+    long getBlocksEncoded();
+
+    long getBlocksDecoded();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getDecodeBytesIn();
+
+    long getDecodeBytesOut();
+
+    double getCompressionRatio();
+
+    long getEncodeNanos();
+
+    long getDecodeNanos();
+
+    long getModelingNanos();
+
+    long getBitOutputNanos();
+
+    long getIoNanos();
+
+    long getDictionaryFullEvents();
+
+    long getDictionaryResets();
+
+    long[] getMatchLengthHistogram();
+
+    long[] getCodeLengthHistogram();
+}
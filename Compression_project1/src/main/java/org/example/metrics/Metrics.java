@@ -0,0 +1,89 @@
+package org.example.metrics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// with no listener installed the hooks cost one volatile read; clocks are only read while one is
+public class Metrics {
+    private static volatile CodecListener listener;
+
+    public static CodecListener getListener() {
+        return listener;
+    }
+
+    public static void setListener(CodecListener listener) {
+        Metrics.listener = listener;
+    }
+
+    public static boolean isEnabled() {
+        return listener != null;
+    }
+
+    // returns 0 while disabled, which the reporting methods below ignore
+    public static long start() {
+        return listener != null ? System.nanoTime() : 0;
+    }
+
+    public static void phase(String codec, Phase phase, long start) {
+        CodecListener listener = Metrics.listener;
+        if (listener != null && start != 0) {
+            listener.phase(codec, phase, System.nanoTime() - start);
+        }
+    }
+
+    public static void blockEncoded(String codec, long rawLength, long encodedLength, long start) {
+        CodecListener listener = Metrics.listener;
+        if (listener != null && start != 0) {
+            listener.blockEncoded(codec, rawLength, encodedLength, System.nanoTime() - start);
+        }
+    }
+
+    public static void blockDecoded(String codec, long encodedLength, long rawLength, long start) {
+        CodecListener listener = Metrics.listener;
+        if (listener != null && start != 0) {
+            listener.blockDecoded(codec, encodedLength, rawLength, System.nanoTime() - start);
+        }
+    }
+
+    // a file-path compress, reported as one block; the file sizes are only looked up while enabled
+    public static void fileEncoded(String codec, String input, String output, long start) throws IOException {
+        if (listener != null && start != 0) {
+            blockEncoded(codec, Files.size(Path.of(input)), Files.size(Path.of(output)), start);
+        }
+    }
+
+    public static void fileDecoded(String codec, String input, String output, long start) throws IOException {
+        if (listener != null && start != 0) {
+            blockDecoded(codec, Files.size(Path.of(input)), Files.size(Path.of(output)), start);
+        }
+    }
+
+    public static void codeLengths(String codec, byte[] lengths) {
+        CodecListener listener = Metrics.listener;
+        if (listener != null) {
+            listener.codeLengths(codec, lengths);
+        }
+    }
+
+    public static void matchLengths(String codec, int[] histogram) {
+        CodecListener listener = Metrics.listener;
+        if (listener != null && histogram != null) {
+            listener.matchLengths(codec, histogram);
+        }
+    }
+
+    public static void dictionaryFull(String codec, long inputPosition) {
+        CodecListener listener = Metrics.listener;
+        if (listener != null) {
+            listener.dictionaryFull(codec, inputPosition);
+        }
+    }
+
+    public static void dictionaryReset(String codec, long inputPosition) {
+        CodecListener listener = Metrics.listener;
+        if (listener != null) {
+            listener.dictionaryReset(codec, inputPosition);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package org.example.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// aggregates events per codec; install with Metrics.setListener
+public class MetricsRegistry implements CodecListener {
+    public static final String JMX_DOMAIN = "org.example.compression";
+
+    private final Map<String, CodecMetrics> codecs = new ConcurrentHashMap<>();
+    private final MBeanServer mbeanServer;
+
+    public MetricsRegistry() {
+        this(null);
+    }
+
+    // each codec is registered as JMX_DOMAIN:type=Codec,name=<codec> when it first reports
+    public MetricsRegistry(MBeanServer mbeanServer) {
+        this.mbeanServer = mbeanServer;
+    }
+
+    public static MetricsRegistry withPlatformMBeanServer() {
+        return new MetricsRegistry(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public CodecMetrics get(String codec) {
+        return codecs.computeIfAbsent(codec, this::create);
+    }
+
+    @Override
+    public void blockEncoded(String codec, long rawLength, long encodedLength, long nanos) {
+        CodecMetrics metrics = get(codec);
+        metrics.blocksEncoded.increment();
+        metrics.bytesIn.add(rawLength);
+        metrics.bytesOut.add(encodedLength);
+        metrics.encodeNanos.add(nanos);
+    }
+
+    @Override
+    public void blockDecoded(String codec, long encodedLength, long rawLength, long nanos) {
+        CodecMetrics metrics = get(codec);
+        metrics.blocksDecoded.increment();
+        metrics.decodeBytesIn.add(encodedLength);
+        metrics.decodeBytesOut.add(rawLength);
+        metrics.decodeNanos.add(nanos);
+    }
+
+    @Override
+    public void phase(String codec, Phase phase, long nanos) {
+        get(codec).phaseNanos[phase.ordinal()].add(nanos);
+    }
+
+    @Override
+    public void matchLengths(String codec, int[] histogram) {
+        CodecMetrics metrics = get(codec);
+        for (int length = 0; length < histogram.length && length <= CodecMetrics.MAX_MATCH_LENGTH; length++) {
+            if (histogram[length] != 0) {
+                metrics.matchLengths.addAndGet(length, histogram[length]);
+            }
+        }
+    }
+
+    @Override
+    public void codeLengths(String codec, byte[] lengths) {
+        CodecMetrics metrics = get(codec);
+        for (byte length : lengths) {
+            if (length > 0 && length <= CodecMetrics.MAX_CODE_LENGTH) {
+                metrics.codeLengths.incrementAndGet(length);
+            }
+        }
+    }
+
+    @Override
+    public void dictionaryFull(String codec, long inputPosition) {
+        get(codec).dictionaryFull.increment();
+    }
+
+    @Override
+    public void dictionaryReset(String codec, long inputPosition) {
+        get(codec).dictionaryResets.increment();
+    }
+
+    public void unregister() {
+        if (mbeanServer == null) {
+            return;
+        }
+        for (String codec : codecs.keySet()) {
+            try {
+                ObjectName name = objectName(codec);
+                if (mbeanServer.isRegistered(name)) {
+                    mbeanServer.unregisterMBean(name);
+                }
+            } catch (JMException ignored) {
+            }
+        }
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"codecs\":{");
+        String separator = "";
+        for (Map.Entry<String, CodecMetrics> entry : new TreeMap<>(codecs).entrySet()) {
+            CodecMetrics m = entry.getValue();
+            json.append(separator).append('"').append(entry.getKey()).append("\":{");
+            json.append("\"blocksEncoded\":").append(m.getBlocksEncoded());
+            json.append(",\"blocksDecoded\":").append(m.getBlocksDecoded());
+            json.append(",\"bytesIn\":").append(m.getBytesIn());
+            json.append(",\"bytesOut\":").append(m.getBytesOut());
+            json.append(",\"compressionRatio\":").append(m.getCompressionRatio());
+            json.append(",\"decodeBytesIn\":").append(m.getDecodeBytesIn());
+            json.append(",\"decodeBytesOut\":").append(m.getDecodeBytesOut());
+            json.append(",\"encodeNanos\":").append(m.getEncodeNanos());
+            json.append(",\"decodeNanos\":").append(m.getDecodeNanos());
+            json.append(",\"modelingNanos\":").append(m.getModelingNanos());
+            json.append(",\"bitOutputNanos\":").append(m.getBitOutputNanos());
+            json.append(",\"ioNanos\":").append(m.getIoNanos());
+            json.append(",\"dictionaryFullEvents\":").append(m.getDictionaryFullEvents());
+            json.append(",\"dictionaryResets\":").append(m.getDictionaryResets());
+            appendHistogram(json.append(",\"matchLengths\":"), m.getMatchLengthHistogram());
+            appendHistogram(json.append(",\"codeLengths\":"), m.getCodeLengthHistogram());
+            json.append('}');
+            separator = ",";
+        }
+        return json.append("}}").toString();
+    }
+
+    // only non-zero buckets, as {"length":count}
+    private static void appendHistogram(StringBuilder json, long[] histogram) {
+        json.append('{');
+        String separator = "";
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] != 0) {
+                json.append(separator).append('"').append(i).append("\":").append(histogram[i]);
+                separator = ",";
+            }
+        }
+        json.append('}');
+    }
+
+    private CodecMetrics create(String codec) {
+        CodecMetrics metrics = new CodecMetrics();
+        if (mbeanServer != null) {
+            try {
+                // a newer registry takes over the names of an older one
+                ObjectName name = objectName(codec);
+                if (mbeanServer.isRegistered(name)) {
+                    mbeanServer.unregisterMBean(name);
+                }
+                mbeanServer.registerMBean(metrics, name);
+            } catch (JMException e) {
+                throw new IllegalStateException("Could not register metrics for " + codec, e);
+            }
+        }
+        return metrics;
+    }
+
+    private static ObjectName objectName(String codec) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=Codec,name=" + ObjectName.quote(codec));
+    }
+}
@@ -0,0 +1,10 @@
+package org.example.metrics;
+
+public enum Phase {
+    // statistics, match finding and code construction
+    MODELING,
+    // writing codes to the bit stream
+    BIT_OUTPUT,
+    // reading and writing the surrounding stream or file
+    IO
+}
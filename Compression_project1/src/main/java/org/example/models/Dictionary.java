@@ -0,0 +1,91 @@
+package org.example.models;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// a trained dictionary: content that primes the LZ77 window and the LZW table, and code lengths for all 256
+// byte values that replace a per-message Huffman table. Output compressed with it starts with its id.
+public class Dictionary {
+    public static final int MAX_CONTENT_SIZE = 1 << 16;
+    private static final int MAGIC = 0x44494331;
+
+    private final int id;
+    private final byte[] content;
+    private final byte[] codeLengths;
+
+    public Dictionary(int id, byte[] content, byte[] codeLengths) {
+        if (content.length > MAX_CONTENT_SIZE) {
+            throw new IllegalArgumentException("Dictionary content exceeds " + MAX_CONTENT_SIZE + " bytes");
+        }
+        if (codeLengths.length != 256) {
+            throw new IllegalArgumentException("Dictionary needs a code length for every byte value");
+        }
+        for (byte length : codeLengths) {
+            if (length <= 0 || length > 15) {
+                throw new IllegalArgumentException("Invalid dictionary code length: " + length);
+            }
+        }
+        this.id = id;
+        this.content = content.clone();
+        this.codeLengths = codeLengths.clone();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    // shared with the coders, which only read it
+    public byte[] getContent() {
+        return content;
+    }
+
+    public byte[] getCodeLengths() {
+        return codeLengths;
+    }
+
+    // throws unless compressed starts with this dictionary's id
+    public void checkId(byte[] compressed) throws IOException {
+        if (compressed.length < 4) {
+            throw new IOException("Truncated dictionary-compressed data");
+        }
+        int found = readId(compressed);
+        if (found != id) {
+            throw new IOException(String.format("Data was compressed with dictionary %08x, not %08x", found, id));
+        }
+    }
+
+    // the id of the dictionary that compressed data needs, for callers that keep several
+    public static int readId(byte[] compressed) {
+        return (compressed[0] & 0xFF) << 24 | (compressed[1] & 0xFF) << 16 | (compressed[2] & 0xFF) << 8
+                | (compressed[3] & 0xFF);
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(id);
+        out.writeInt(content.length);
+        out.write(content);
+        out.write(codeLengths);
+    }
+
+    public static Dictionary read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a dictionary");
+        }
+        int id = in.readInt();
+        int length = in.readInt();
+        if (length < 0 || length > MAX_CONTENT_SIZE) {
+            throw new IOException("Invalid dictionary size: " + length);
+        }
+        byte[] content = new byte[length];
+        in.readFully(content);
+        byte[] codeLengths = new byte[256];
+        in.readFully(codeLengths);
+        try {
+            return new Dictionary(id, content, codeLengths);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt dictionary: " + e.getMessage());
+        }
+    }
+}
@@ -1,7 +1,21 @@
 package org.example.models;
 
+import java.util.Arrays;
+
 public class FrequencyTable {
-    private final long[] symbolCounts = new long[256];
+    private final long[] symbolCounts;
+
+    public FrequencyTable(){
+        this(256);
+    }
+
+    public FrequencyTable(int alphabetSize){
+        symbolCounts = new long[alphabetSize];
+    }
+
+    public int getAlphabetSize(){
+        return symbolCounts.length;
+    }
 
     public long getCountForSymbol(int symbol){
         return symbolCounts[symbol];
@@ -11,6 +25,39 @@ public class FrequencyTable {
         symbolCounts[symbol] += 1;
     }
 
+    public void decrement(int symbol){
+        symbolCounts[symbol] -= 1;
+    }
+
+    public void add(int symbol, long count){
+        symbolCounts[symbol] += count;
+    }
+
+    public void clear(){
+        Arrays.fill(symbolCounts, 0);
+    }
+
+    public void merge(FrequencyTable other){
+        checkAlphabet(other);
+        for(int i = 0; i < symbolCounts.length; i++){
+            symbolCounts[i] += other.symbolCounts[i];
+        }
+    }
+
+    // other must count a subset of what this table counts, e.g. a block leaving a sliding window
+    public void subtract(FrequencyTable other){
+        checkAlphabet(other);
+        for(int i = 0; i < symbolCounts.length; i++){
+            if(other.symbolCounts[i] > symbolCounts[i])
+                throw new IllegalArgumentException("Count for symbol " + i + " would become negative");
+            symbolCounts[i] -= other.symbolCounts[i];
+        }
+    }
+
+    public long[] toArray(){
+        return symbolCounts.clone();
+    }
+
     public long getTotalCounts(){
         long sum = 0;
         for(long c : symbolCounts){
@@ -18,4 +65,9 @@ public class FrequencyTable {
         }
         return sum;
     }
+
+    private void checkAlphabet(FrequencyTable other){
+        if(other.symbolCounts.length != symbolCounts.length)
+            throw new IllegalArgumentException("Alphabet sizes differ: " + symbolCounts.length + " and " + other.symbolCounts.length);
+    }
 }
@@ -1,6 +1,9 @@
 package org.example.models;
 
 public class Token {
+    // the symbol of a match that is not followed by a literal
+    public static final int NO_SYMBOL = -1;
+
     private final int offset;
     private final int length;
     private final int symbol;
@@ -22,4 +25,8 @@ public class Token {
     public int getSymbol() {
         return symbol;
     }
+
+    public boolean hasSymbol() {
+        return symbol != NO_SYMBOL;
+    }
 }
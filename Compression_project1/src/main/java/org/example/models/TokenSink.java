@@ -0,0 +1,7 @@
+package org.example.models;
+
+import java.io.IOException;
+
+public interface TokenSink {
+    void accept(Token token) throws IOException;
+}
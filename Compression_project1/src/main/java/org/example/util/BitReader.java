@@ -0,0 +1,82 @@
+package org.example.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class BitReader {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+
+    // bits are kept left-aligned: the next unread bit is the most significant bit of bitBuffer
+    private long bitBuffer;
+    private int bitCount;
+    private int paddingBits;
+
+    public BitReader(InputStream in) {
+        this.in = in;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    public BitReader(byte[] data, int offset, int length) {
+        this.in = null;
+        this.buffer = data;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    public int peekBits(int n) throws IOException {
+        if (bitCount < n) {
+            refill();
+        }
+        return (int) (bitBuffer >>> (64 - n));
+    }
+
+    public void skipBits(int n) {
+        bitBuffer <<= n;
+        bitCount -= n;
+    }
+
+    public int readBits(int n) throws IOException {
+        // a 64-bit shift is a no-op in Java, so zero-width reads cannot go through peekBits
+        if (n == 0) {
+            return 0;
+        }
+        int value = peekBits(n);
+        skipBits(n);
+        return value;
+    }
+
+    private void refill() throws IOException {
+        if (paddingBits > bitCount) {
+            throw new EOFException("Unexpected end of compressed data");
+        }
+        while (bitCount <= 56) {
+            if (position == limit && !fill()) {
+                // past the end of input the stream reads as zeros, so a decoder may look ahead
+                // further than the last code; actually consuming those bits is reported above
+                paddingBits += 8;
+            } else {
+                bitBuffer |= (buffer[position++] & 0xFFL) << (56 - bitCount);
+            }
+            bitCount += 8;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (in == null) {
+            return false;
+        }
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = n;
+        return true;
+    }
+}
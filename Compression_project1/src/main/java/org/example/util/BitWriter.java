@@ -0,0 +1,64 @@
+package org.example.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class BitWriter {
+    private static final int BUFFER_SIZE = 8192;
+
+    private OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+
+    // pending bits are right-aligned, at most 31 of them between calls
+    private long bitBuffer;
+    private int bitCount;
+
+    public BitWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    // points a flushed writer at another stream, keeping its buffer
+    public void reset(OutputStream out) {
+        this.out = out;
+        position = 0;
+        bitBuffer = 0;
+        bitCount = 0;
+    }
+
+    public void writeBits(int value, int length) throws IOException {
+        bitBuffer = (bitBuffer << length) | (value & ((1L << length) - 1));
+        bitCount += length;
+        if (bitCount >= 32) {
+            bitCount -= 32;
+            if (position > BUFFER_SIZE - 4) {
+                flushBuffer();
+            }
+            int word = (int) (bitBuffer >>> bitCount);
+            buffer[position++] = (byte) (word >>> 24);
+            buffer[position++] = (byte) (word >>> 16);
+            buffer[position++] = (byte) (word >>> 8);
+            buffer[position++] = (byte) word;
+        }
+    }
+
+    // pads the last partial byte with zero bits and hands everything to the underlying stream
+    public void flush() throws IOException {
+        while (bitCount > 0) {
+            if (position == BUFFER_SIZE) {
+                flushBuffer();
+            }
+            bitCount -= 8;
+            buffer[position++] = (byte) (bitCount >= 0 ? bitBuffer >>> bitCount : bitBuffer << -bitCount);
+        }
+        bitCount = 0;
+        bitBuffer = 0;
+        flushBuffer();
+        out.flush();
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+}
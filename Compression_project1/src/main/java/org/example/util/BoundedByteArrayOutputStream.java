@@ -0,0 +1,39 @@
+package org.example.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class BoundedByteArrayOutputStream extends OutputStream {
+    private final byte[] buffer;
+    private final int start;
+    private final int limit;
+    private int position;
+
+    public BoundedByteArrayOutputStream(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.start = offset;
+        this.limit = offset + length;
+        this.position = offset;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (position == limit) {
+            throw new IOException("Decoded data exceeds expected size");
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len > limit - position) {
+            throw new IOException("Decoded data exceeds expected size");
+        }
+        System.arraycopy(b, off, buffer, position, len);
+        position += len;
+    }
+
+    public int size() {
+        return position - start;
+    }
+}
@@ -1,21 +1,89 @@
 package org.example.util;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.FileInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Checksum;
 
 public class ByteUtil {
 
     public static byte[] readFileToByteArray(String path) throws IOException {
-        try (BufferedInputStream bis = new BufferedInputStream(new FileInputStream(path));
-             ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
-            byte[] buf = new byte[1024];
-            int n;
-            while ((n = bis.read(buf)) != -1) {
-                bos.write(buf, 0, n);
+        try (FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException("File too large to load into memory: " + path);
             }
-            return bos.toByteArray();
+            byte[] data = new byte[(int) size];
+            readFully(channel, 0, data, 0, data.length);
+            return data;
         }
     }
+
+    // reads in to the end through checksum, one buffer at a time, and returns the number of bytes read
+    public static long checksum(InputStream in, Checksum checksum) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        long total = 0;
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            checksum.update(buffer, 0, n);
+            total += n;
+        }
+        return total;
+    }
+
+    // positional read, safe to call from several threads on the same channel
+    public static void readFully(FileChannel channel, long position, byte[] dst, int offset, int length)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(dst, offset, length);
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position() - offset);
+            if (n < 0) {
+                throw new EOFException("Unexpected end of file");
+            }
+        }
+    }
+
+    // 7 bits per byte, least significant group first, high bit set on all but the last byte
+    public static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    // bytes writeVarInt takes for value
+    public static int varIntSize(int value) {
+        return Math.max(1, (38 - Integer.numberOfLeadingZeros(value)) / 7);
+    }
+
+    public static int readVarInt(InputStream in) throws IOException {
+        int first = in.read();
+        if (first == -1) {
+            throw new EOFException("Unexpected end of stream");
+        }
+        return readVarInt(in, first);
+    }
+
+    // for callers that read the first byte themselves to detect the end of a stream
+    public static int readVarInt(InputStream in, int first) throws IOException {
+        int value = first & 0x7F;
+        int b = first;
+        for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+            if (shift > 28) {
+                throw new IOException("Malformed variable-length integer");
+            }
+            b = in.read();
+            if (b == -1) {
+                throw new EOFException("Unexpected end of stream");
+            }
+            value |= (b & 0x7F) << shift;
+        }
+        return value;
+    }
 }
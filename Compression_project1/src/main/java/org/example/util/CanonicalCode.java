@@ -0,0 +1,40 @@
+package org.example.util;
+
+public class CanonicalCode {
+
+    public static int maxLength(byte[] lengths) {
+        int max = 0;
+        for (byte length : lengths) {
+            max = Math.max(max, length);
+        }
+        return max;
+    }
+
+    // codes of equal length are consecutive integers, ordered by symbol; shorter codes come first
+    public static int[] assignCodes(byte[] lengths) {
+        int[] codes = new int[lengths.length];
+        assignCodes(lengths, codes);
+        return codes;
+    }
+
+    public static void assignCodes(byte[] lengths, int[] codes) {
+        int maxLength = maxLength(lengths);
+        int[] lengthCount = new int[maxLength + 1];
+        for (byte length : lengths) {
+            if (length > 0) {
+                lengthCount[length]++;
+            }
+        }
+
+        int[] nextCode = new int[maxLength + 1];
+        int code = 0;
+        for (int bits = 1; bits <= maxLength; bits++) {
+            code = (code + lengthCount[bits - 1]) << 1;
+            nextCode[bits] = code;
+        }
+
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            codes[symbol] = lengths[symbol] > 0 ? nextCode[lengths[symbol]]++ : 0;
+        }
+    }
+}
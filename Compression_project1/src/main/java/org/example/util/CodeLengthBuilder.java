@@ -0,0 +1,253 @@
+package org.example.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// prefix code lengths for alphabets of any size, from frequencies indexed by symbol; symbols that do not
+// occur get length zero, a lone symbol gets length one
+public class CodeLengthBuilder {
+    // Shannon-Fano ranges at least this wide split their two halves in parallel
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+
+    // optimal lengths: two-queue Huffman on the sorted frequencies, package-merge if a code exceeds maxLength
+    public static byte[] huffman(long[] frequencies, int maxLength) {
+        byte[] lengths = new byte[frequencies.length];
+        huffman(frequencies, maxLength, lengths);
+        return lengths;
+    }
+
+    // the same lengths written into a caller's array, so a coder can keep one between blocks
+    public static void huffman(long[] frequencies, int maxLength, byte[] lengths) {
+        int[] symbols = sortedSymbols(frequencies);
+        int n = symbols.length;
+        if (n > 0 && 32 - Integer.numberOfLeadingZeros(n - 1) > maxLength) {
+            throw new IllegalArgumentException(n + " symbols do not fit in codes of " + maxLength + " bits");
+        }
+        Arrays.fill(lengths, 0, frequencies.length, (byte) 0);
+        if (n == 1) {
+            lengths[symbols[0]] = 1;
+        } else if (n > 1) {
+            long[] weights = new long[n];
+            for (int i = 0; i < n; i++) {
+                weights[i] = frequencies[symbols[i]];
+            }
+            int[] depths = huffmanDepths(weights);
+            if (depths[0] > maxLength) {
+                depths = packageMerge(weights, maxLength);
+            }
+            for (int i = 0; i < n; i++) {
+                lengths[symbols[i]] = (byte) depths[i];
+            }
+        }
+    }
+
+    // Shannon-Fano splits of the frequencies in descending order; while a code exceeds maxLength
+    // the distribution is flattened and split again
+    public static byte[] shannonFano(long[] frequencies, int maxLength) {
+        long[] weights = frequencies.clone();
+        byte[] lengths = new byte[frequencies.length];
+        while (true) {
+            int[] symbols = sortedSymbols(weights);
+            int n = symbols.length;
+            if (n == 0) {
+                return lengths;
+            }
+            // prefix[i] is the total weight of the i heaviest symbols
+            long[] prefix = new long[n + 1];
+            for (int i = 0; i < n; i++) {
+                prefix[i + 1] = prefix[i] + weights[symbols[n - 1 - i]];
+            }
+            int[] ordered = new int[n];
+            for (int i = 0; i < n; i++) {
+                ordered[i] = symbols[n - 1 - i];
+            }
+            Split root = new Split(ordered, prefix, lengths, 0, n, 0);
+            int deepest = n < PARALLEL_THRESHOLD ? root.compute() : ForkJoinPool.commonPool().invoke(root);
+            if (deepest <= maxLength) {
+                return lengths;
+            }
+            for (int i = 0; i < weights.length; i++) {
+                if (weights[i] > 0) {
+                    weights[i] = (weights[i] >>> 1) | 1;
+                }
+            }
+        }
+    }
+
+    // symbols that occur, by ascending frequency and then by symbol
+    private static int[] sortedSymbols(long[] frequencies) {
+        int symbolBits = 32 - Integer.numberOfLeadingZeros(Math.max(1, frequencies.length - 1));
+        long maxFrequency = 0;
+        int n = 0;
+        for (long frequency : frequencies) {
+            if (frequency > 0) {
+                maxFrequency = Math.max(maxFrequency, frequency);
+                n++;
+            }
+        }
+        if (maxFrequency >>> (63 - symbolBits) != 0) {
+            return sortedSymbolsBoxed(frequencies);
+        }
+        // frequency and symbol packed into one key, so the order comes from a primitive sort
+        long[] keys = new long[n];
+        for (int symbol = 0, i = 0; symbol < frequencies.length; symbol++) {
+            if (frequencies[symbol] > 0) {
+                keys[i++] = frequencies[symbol] << symbolBits | symbol;
+            }
+        }
+        Arrays.sort(keys);
+        int[] symbols = new int[n];
+        long symbolMask = (1L << symbolBits) - 1;
+        for (int i = 0; i < n; i++) {
+            symbols[i] = (int) (keys[i] & symbolMask);
+        }
+        return symbols;
+    }
+
+    private static int[] sortedSymbolsBoxed(long[] frequencies) {
+        List<Integer> symbols = new ArrayList<>();
+        for (int symbol = 0; symbol < frequencies.length; symbol++) {
+            if (frequencies[symbol] > 0) {
+                symbols.add(symbol);
+            }
+        }
+        symbols.sort((a, b) -> frequencies[a] != frequencies[b] ? Long.compare(frequencies[a], frequencies[b])
+                : Integer.compare(a, b));
+        return symbols.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // leaves come sorted, and internal nodes are created in ascending weight, so the two lightest
+    // nodes are always at the head of one of the two queues
+    private static int[] huffmanDepths(long[] weights) {
+        int n = weights.length;
+        long[] internal = new long[n - 1];
+        int[] leafParent = new int[n];
+        int[] internalParent = new int[n - 1];
+        int leaf = 0, head = 0;
+        for (int node = 0; node < n - 1; node++) {
+            long sum = 0;
+            for (int k = 0; k < 2; k++) {
+                if (leaf < n && (head == node || weights[leaf] <= internal[head])) {
+                    sum += weights[leaf];
+                    leafParent[leaf++] = node;
+                } else {
+                    sum += internal[head];
+                    internalParent[head++] = node;
+                }
+            }
+            internal[node] = sum;
+        }
+
+        // the root is the last internal node; parents always come after their children
+        int[] internalDepth = new int[n - 1];
+        for (int node = n - 3; node >= 0; node--) {
+            internalDepth[node] = internalDepth[internalParent[node]] + 1;
+        }
+        int[] depths = new int[n];
+        for (int i = 0; i < n; i++) {
+            depths[i] = internalDepth[leafParent[i]] + 1;
+        }
+        return depths;
+    }
+
+    // package-merge: each level pairs up the items of the level below and merges the packages with the leaves;
+    // the 2n - 2 lightest items of the top level then give every leaf one bit per level it is picked on
+    private static int[] packageMerge(long[] weights, int maxLength) {
+        int n = weights.length;
+        boolean[][] isLeaf = new boolean[maxLength][];
+        long[] items = weights.clone();
+        isLeaf[maxLength - 1] = new boolean[n];
+        Arrays.fill(isLeaf[maxLength - 1], true);
+        for (int level = maxLength - 2; level >= 0; level--) {
+            int packages = items.length / 2;
+            long[] merged = new long[n + packages];
+            boolean[] leaves = new boolean[n + packages];
+            for (int i = 0, l = 0, p = 0; i < merged.length; i++) {
+                long packageWeight = p < packages ? items[2 * p] + items[2 * p + 1] : Long.MAX_VALUE;
+                if (l < n && weights[l] <= packageWeight) {
+                    merged[i] = weights[l++];
+                    leaves[i] = true;
+                } else {
+                    merged[i] = packageWeight;
+                    p++;
+                }
+            }
+            items = merged;
+            isLeaf[level] = leaves;
+        }
+
+        // picked leaves are always the lightest ones, so counting them per level is enough
+        int[] depths = new int[n];
+        int picked = 2 * n - 2;
+        for (int level = 0; level < maxLength && picked > 0; level++) {
+            int leaves = 0;
+            for (int i = 0; i < picked; i++) {
+                if (isLeaf[level][i]) {
+                    leaves++;
+                }
+            }
+            for (int i = 0; i < leaves; i++) {
+                depths[i]++;
+            }
+            picked = 2 * (picked - leaves);
+        }
+        return depths;
+    }
+
+    // returns the deepest code length in ordered[from, to), which sits at the given depth
+    private static class Split extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] ordered;
+        private final long[] prefix;
+        private final byte[] lengths;
+        private final int from;
+        private final int to;
+        private final int depth;
+
+        Split(int[] ordered, long[] prefix, byte[] lengths, int from, int to, int depth) {
+            this.ordered = ordered;
+            this.prefix = prefix;
+            this.lengths = lengths;
+            this.from = from;
+            this.to = to;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (to - from == 1) {
+                int length = Math.max(depth, 1);
+                lengths[ordered[from]] = (byte) Math.min(length, Byte.MAX_VALUE);
+                return length;
+            }
+            int split = split();
+            Split left = new Split(ordered, prefix, lengths, from, split, depth + 1);
+            Split right = new Split(ordered, prefix, lengths, split, to, depth + 1);
+            if (to - from < PARALLEL_THRESHOLD) {
+                return Math.max(left.compute(), right.compute());
+            }
+            left.fork();
+            int deepest = right.compute();
+            return Math.max(left.join(), deepest);
+        }
+
+        // the first split point where the left part holds at least half the weight of the range
+        private int split() {
+            long half = (prefix[to] - prefix[from]) / 2;
+            int low = from + 1, high = to - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (prefix[middle] - prefix[from] >= half) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            return low;
+        }
+    }
+}
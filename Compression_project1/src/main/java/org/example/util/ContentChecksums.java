@@ -0,0 +1,273 @@
+package org.example.util;
+
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+import static org.example.util.ByteUtil.readFully;
+
+// CRC32C of every CHUNK_SIZE bytes of a file's content, gathered while the content is encoded and written
+// after the compressed data; a decompressor reads them from the end of the file before it starts, so it can
+// still check each chunk as soon as it has produced it. Trailer layout: [crc per chunk][length][MAGIC]
+public class ContentChecksums {
+    public static final int CHUNK_SIZE = 1 << 16;
+    private static final int MAGIC = 0x43524332;
+    // the length and MAGIC after the checksums
+    private static final int FIXED_SIZE = 12;
+
+    private final long length;
+    private final int[] checksums;
+    // bytes of compressed data in front of the trailer
+    private final long dataLength;
+
+    private ContentChecksums(long length, int[] checksums, long dataLength) {
+        this.length = length;
+        this.checksums = checksums;
+        this.dataLength = dataLength;
+    }
+
+    public static ContentChecksums read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < FIXED_SIZE) {
+                throw new IOException("Missing content checksums");
+            }
+            ByteBuffer tail = ByteBuffer.allocate(FIXED_SIZE);
+            readFully(channel, size - FIXED_SIZE, tail.array(), 0, FIXED_SIZE);
+            if (tail.getInt(8) != MAGIC) {
+                throw new IOException("Missing content checksums");
+            }
+            long length = tail.getLong(0);
+            long count = (length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            // the checksums have to fit in the file, which bounds the allocation
+            if (length < 0 || count > (size - FIXED_SIZE) / 4 || count > Integer.MAX_VALUE / 4) {
+                throw new IOException("Invalid content length: " + length);
+            }
+            byte[] bytes = new byte[(int) count * 4];
+            long dataLength = size - FIXED_SIZE - bytes.length;
+            readFully(channel, dataLength, bytes, 0, bytes.length);
+            int[] checksums = new int[(int) count];
+            ByteBuffer.wrap(bytes).asIntBuffer().get(checksums);
+            return new ContentChecksums(length, checksums, dataLength);
+        }
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    // the compressed data of a file opened at its start, ending where the trailer begins
+    public InputStream compressedData(InputStream in) {
+        return new LimitedInputStream(in, dataLength);
+    }
+
+    // passes writes on to out and fails at the first chunk whose checksum does not match
+    public Verifier verifying(OutputStream out) {
+        return new Verifier(out);
+    }
+
+    // gathers the checksums of the content an encoder consumes, then writes them as the trailer
+    public static class Collector {
+        private final CRC32C crc = new CRC32C();
+        private int[] checksums = new int[16];
+        private int count;
+        private long length;
+
+        public void update(int b) {
+            crc.update(b);
+            advance(1);
+        }
+
+        public void update(byte[] b, int off, int len) {
+            while (len > 0) {
+                int n = (int) Math.min(len, CHUNK_SIZE - length % CHUNK_SIZE);
+                crc.update(b, off, n);
+                off += n;
+                len -= n;
+                advance(n);
+            }
+        }
+
+        // the bytes from the buffer's position to its limit; the buffer itself is left as it is
+        public void update(ByteBuffer buffer) {
+            ByteBuffer view = buffer.duplicate();
+            int limit = view.limit();
+            while (view.position() < limit) {
+                int n = (int) Math.min(limit - view.position(), CHUNK_SIZE - length % CHUNK_SIZE);
+                view.limit(view.position() + n);
+                crc.update(view);
+                view.limit(limit);
+                advance(n);
+            }
+        }
+
+        // an input stream that checksums whatever is read through it
+        public InputStream checking(InputStream in) {
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = in.read();
+                    if (b != -1) {
+                        update(b);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = in.read(b, off, len);
+                    if (n > 0) {
+                        update(b, off, n);
+                    }
+                    return n;
+                }
+
+                // skipped bytes would miss the checksum, so nothing is skipped
+                @Override
+                public long skip(long n) {
+                    return 0;
+                }
+            };
+        }
+
+        public void write(DataOutputStream out) throws IOException {
+            if (length % CHUNK_SIZE != 0) {
+                add((int) crc.getValue());
+            }
+            for (int i = 0; i < count; i++) {
+                out.writeInt(checksums[i]);
+            }
+            out.writeLong(length);
+            out.writeInt(MAGIC);
+        }
+
+        private void advance(int n) {
+            length += n;
+            if (length % CHUNK_SIZE == 0) {
+                add((int) crc.getValue());
+                crc.reset();
+            }
+        }
+
+        private void add(int checksum) {
+            if (count == checksums.length) {
+                checksums = Arrays.copyOf(checksums, 2 * count);
+            }
+            checksums[count++] = checksum;
+        }
+    }
+
+    public class Verifier extends FilterOutputStream {
+        private final CRC32C crc = new CRC32C();
+        private long position;
+
+        private Verifier(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (position == length) {
+                throw new IOException("Decompressed data exceeds " + length + " bytes");
+            }
+            out.write(b);
+            crc.update(b);
+            position++;
+            if (position % CHUNK_SIZE == 0 || position == length) {
+                check();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > length - position) {
+                throw new IOException("Decompressed data exceeds " + length + " bytes");
+            }
+            out.write(b, off, len);
+            while (len > 0) {
+                int n = (int) Math.min(len, CHUNK_SIZE - position % CHUNK_SIZE);
+                crc.update(b, off, n);
+                position += n;
+                off += n;
+                len -= n;
+                if (position % CHUNK_SIZE == 0 || position == length) {
+                    check();
+                }
+            }
+        }
+
+        // checks that all of the content arrived; the stream underneath stays open
+        public void finish() throws IOException {
+            out.flush();
+            if (position != length) {
+                throw new IOException("Decompressed data ends after " + position + " of " + length + " bytes");
+            }
+        }
+
+        private void check() throws IOException {
+            int chunk = (int) ((position - 1) / CHUNK_SIZE);
+            if ((int) crc.getValue() != checksums[chunk]) {
+                throw new IOException("Checksum mismatch in chunk " + chunk + " (bytes "
+                        + (long) chunk * CHUNK_SIZE + " to " + position + ")");
+            }
+            crc.reset();
+        }
+    }
+
+    private static class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        private LimitedInputStream(InputStream in, long remaining) {
+            super(in);
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b != -1) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining == 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+    }
+}
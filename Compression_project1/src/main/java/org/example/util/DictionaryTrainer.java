@@ -0,0 +1,147 @@
+package org.example.util;
+
+import org.example.HuffmanAlgorithm;
+import org.example.models.Dictionary;
+import org.example.models.FrequencyTable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+// builds a dictionary from sample messages in the manner of zstd's COVER trainer: the samples are cut into
+// epochs, each epoch gives up the segment whose 8-byte substrings occur in the most samples, and substrings
+// already taken stop counting
+public class DictionaryTrainer {
+    public static final int DEFAULT_SIZE = 1 << 15;
+    private static final int DMER = 8;
+    private static final int SEGMENT_SIZE = 64;
+
+    public static Dictionary train(List<byte[]> samples) {
+        return train(samples, DEFAULT_SIZE);
+    }
+
+    public static Dictionary train(List<byte[]> samples, int maxSize) {
+        if (maxSize <= 0 || maxSize > Dictionary.MAX_CONTENT_SIZE) {
+            throw new IllegalArgumentException("Dictionary size must be between 1 and "
+                    + Dictionary.MAX_CONTENT_SIZE + ": " + maxSize);
+        }
+        byte[] content = selectSegments(samples, maxSize);
+
+        // every byte value keeps a code, so messages with unseen bytes still encode
+        FrequencyTable frequencyTable = new FrequencyTable();
+        for (int symbol = 0; symbol < 256; symbol++) {
+            frequencyTable.increment(symbol);
+        }
+        for (byte[] sample : samples) {
+            Histogram.count(sample, 0, sample.length, frequencyTable);
+        }
+        byte[] codeLengths = HuffmanAlgorithm.computeCodeLengths(frequencyTable);
+
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        crc.update(codeLengths);
+        return new Dictionary((int) crc.getValue(), content, codeLengths);
+    }
+
+    private static byte[] selectSegments(List<byte[]> samples, int maxSize) {
+        // number of samples each d-mer occurs in; a d-mer seen in one sample only is no help to the others
+        Map<Long, Integer> frequencies = new HashMap<>();
+        for (byte[] sample : samples) {
+            Set<Long> seen = new HashSet<>();
+            for (int i = 0; i + DMER <= sample.length; i++) {
+                seen.add(dmer(sample, i));
+            }
+            for (Long key : seen) {
+                frequencies.merge(key, 1, Integer::sum);
+            }
+        }
+
+        List<byte[]> eligible = new ArrayList<>();
+        for (byte[] sample : samples) {
+            if (sample.length >= SEGMENT_SIZE) {
+                eligible.add(sample);
+            }
+        }
+        int epochs = Math.max(1, maxSize / SEGMENT_SIZE);
+        List<Segment> segments = new ArrayList<>();
+        int size = 0;
+        for (int epoch = 0; epoch < epochs && size < maxSize && !eligible.isEmpty(); epoch++) {
+            int from = (int) ((long) eligible.size() * epoch / epochs);
+            int to = Math.max(from + 1, (int) ((long) eligible.size() * (epoch + 1) / epochs));
+            Segment best = null;
+            for (byte[] sample : eligible.subList(from, Math.min(to, eligible.size()))) {
+                Segment segment = bestSegment(sample, frequencies);
+                if (segment != null && (best == null || segment.score > best.score)) {
+                    best = segment;
+                }
+            }
+            if (best == null) {
+                continue;
+            }
+            for (int i = best.start; i + DMER <= best.start + SEGMENT_SIZE; i++) {
+                frequencies.remove(dmer(best.sample, i));
+            }
+            segments.add(best);
+            size += SEGMENT_SIZE;
+        }
+
+        // the most valuable segments go last, where matches against them have the shortest offsets
+        segments.sort((a, b) -> Long.compare(a.score, b.score));
+        size = Math.min(size, maxSize);
+        byte[] content = new byte[size];
+        int position = size;
+        for (int i = segments.size() - 1; i >= 0 && position > 0; i--) {
+            int n = Math.min(SEGMENT_SIZE, position);
+            position -= n;
+            System.arraycopy(segments.get(i).sample, segments.get(i).start + SEGMENT_SIZE - n, content, position, n);
+        }
+        return content;
+    }
+
+    // the window of SEGMENT_SIZE bytes with the highest total d-mer frequency, by a sliding sum
+    private static Segment bestSegment(byte[] sample, Map<Long, Integer> frequencies) {
+        int dmersPerSegment = SEGMENT_SIZE - DMER + 1;
+        int[] scores = new int[sample.length - DMER + 1];
+        for (int i = 0; i < scores.length; i++) {
+            int frequency = frequencies.getOrDefault(dmer(sample, i), 0);
+            scores[i] = frequency > 1 ? frequency : 0;
+        }
+        long sum = 0, best = 0;
+        int bestStart = -1;
+        for (int i = 0; i < scores.length; i++) {
+            sum += scores[i];
+            if (i >= dmersPerSegment) {
+                sum -= scores[i - dmersPerSegment];
+            }
+            if (i >= dmersPerSegment - 1 && sum > best) {
+                best = sum;
+                bestStart = i - dmersPerSegment + 1;
+            }
+        }
+        return bestStart < 0 ? null : new Segment(sample, bestStart, best);
+    }
+
+    private static long dmer(byte[] data, int position) {
+        long key = 0;
+        for (int i = position; i < position + DMER; i++) {
+            key = (key << 8) | (data[i] & 0xFF);
+        }
+        return key;
+    }
+
+    private static class Segment {
+        private final byte[] sample;
+        private final int start;
+        private final long score;
+
+        Segment(byte[] sample, int start, long score) {
+            this.sample = sample;
+            this.start = start;
+            this.score = score;
+        }
+    }
+}
@@ -3,18 +3,48 @@ package org.example.util;
 import org.example.models.FrequencyTable;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class EntropyCalculator {
+    public static final int CHUNK_SIZE = 1 << 22;
+
     public static FrequencyTable calculateFrequency(File file) throws IOException {
-        FrequencyTable frequencyTable = new FrequencyTable();
-        try (FileInputStream fis = new FileInputStream(file)) {
-            int b;
-            while ((b = fis.read()) != -1) {
-                frequencyTable.increment(b & 0xFF);
+        return calculateFrequency(file, Runtime.getRuntime().availableProcessors());
+    }
+
+    // chunks are counted on separate threads and their tables merged at the end
+    public static FrequencyTable calculateFrequency(File file, int parallelism) throws IOException {
+        return calculateFrequency(file, parallelism, MappedFile.DEFAULT_SEGMENT_SIZE);
+    }
+
+    public static FrequencyTable calculateFrequency(File file, int parallelism, int segmentSize) throws IOException {
+        try (MappedFile mappedFile = new MappedFile(file.toPath(), segmentSize)) {
+            List<ByteBuffer> chunks = split(mappedFile, CHUNK_SIZE);
+            if (parallelism <= 1 || chunks.size() <= 1) {
+                FrequencyTable frequencyTable = new FrequencyTable();
+                for (ByteBuffer chunk : chunks) {
+                    Histogram.count(chunk, frequencyTable);
+                }
+                return frequencyTable;
+            }
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                return pool.submit(() -> chunks.parallelStream().collect(FrequencyTable::new,
+                        (table, chunk) -> Histogram.count(chunk, table), FrequencyTable::merge)).join();
+            } finally {
+                pool.shutdownNow();
             }
         }
+    }
+
+    public static FrequencyTable calculateFrequency(byte[] data, int offset, int length) {
+        FrequencyTable frequencyTable = new FrequencyTable();
+        Histogram.count(data, offset, length, frequencyTable);
         return frequencyTable;
     }
 
@@ -24,7 +54,7 @@ public class EntropyCalculator {
         if(total == 0)
             return 0.0;
 
-        for(int i = 0; i < 256; i++){
+        for(int i = 0; i < frequencyTable.getAlphabetSize(); i++){
             long count = frequencyTable.getCountForSymbol(i);
             if(count == 0) continue;
             double p = (double) count / total;
@@ -37,4 +67,60 @@ public class EntropyCalculator {
         FrequencyTable frequencyTable = calculateFrequency(file);
         return calculateEntropy(frequencyTable);
     }
+
+    // entropy of the window of windowBlocks blocks ending at each block; windowBlocks = 1 gives per-block entropy
+    public static double[] calculateWindowEntropy(File file, int blockSize, int windowBlocks) throws IOException {
+        return calculateWindowEntropy(file, blockSize, windowBlocks, MappedFile.DEFAULT_SEGMENT_SIZE);
+    }
+
+    public static double[] calculateWindowEntropy(File file, int blockSize, int windowBlocks, int segmentSize)
+            throws IOException {
+        if (blockSize <= 0 || windowBlocks <= 0) {
+            throw new IllegalArgumentException("Block size and window must be positive");
+        }
+        try (MappedFile mappedFile = new MappedFile(file.toPath(), segmentSize)) {
+            List<ByteBuffer> blocks = split(mappedFile, blockSize);
+            List<FrequencyTable> tables = blocks.parallelStream().map(block -> {
+                FrequencyTable table = new FrequencyTable();
+                Histogram.count(block, table);
+                return table;
+            }).toList();
+
+            // the window slides by one block: add the block entering it, subtract the one leaving it
+            double[] entropies = new double[tables.size()];
+            FrequencyTable window = new FrequencyTable();
+            for (int i = 0; i < tables.size(); i++) {
+                window.merge(tables.get(i));
+                if (i >= windowBlocks) {
+                    window.subtract(tables.get(i - windowBlocks));
+                }
+                entropies[i] = calculateEntropy(window);
+            }
+            return entropies;
+        }
+    }
+
+    // chunk k covers [k * chunkSize, (k + 1) * chunkSize) of the file, only the last one may be short;
+    // chunks are slices of their segment, and one that straddles two segments is mapped on its own
+    static List<ByteBuffer> split(MappedFile mappedFile, int chunkSize) throws IOException {
+        List<ByteBuffer> chunks = new ArrayList<>();
+        int segmentSize = mappedFile.getSegmentSize();
+        MappedByteBuffer segment = null;
+        int segmentIndex = -1;
+        for (long start = 0; start < mappedFile.size(); start += chunkSize) {
+            int length = (int) Math.min(chunkSize, mappedFile.size() - start);
+            int index = (int) (start / segmentSize);
+            long segmentStart = (long) index * segmentSize;
+            if (start + length <= segmentStart + segmentSize) {
+                if (index != segmentIndex) {
+                    segment = mappedFile.segment(index);
+                    segmentIndex = index;
+                }
+                chunks.add(segment.slice((int) (start - segmentStart), length));
+            } else {
+                chunks.add(mappedFile.map(start, length));
+            }
+        }
+        return chunks;
+    }
 }
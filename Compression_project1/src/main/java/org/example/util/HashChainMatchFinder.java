@@ -0,0 +1,172 @@
+package org.example.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class HashChainMatchFinder {
+    public static final int MIN_MATCH = 3;
+    private static final int HASH_BITS = 16;
+    // inserts recorded after mark(); past this many a rollback gives up and the caller resets instead
+    private static final int MAX_UNDO = 1 << 16;
+
+    private final int windowSize;
+    private final int windowMask;
+    private final int maxChain;
+    private final int niceLength;
+    // head[hash] is the most recent position with that hash, prev[position & windowMask] the one before it
+    private final int[] head = new int[1 << HASH_BITS];
+    private final int[] prev;
+
+    private ByteBuffer data;
+    private int matchOffset;
+
+    // per recorded insert: the hash, the head it replaced and the prev slot it overwrote
+    private int[] undo = new int[0];
+    private int undoCount = -1;
+
+    public HashChainMatchFinder(int windowSize, int maxChain, int niceLength) {
+        if (Integer.bitCount(windowSize) != 1) {
+            throw new IllegalArgumentException("Window size must be a power of two: " + windowSize);
+        }
+        this.windowSize = windowSize;
+        this.windowMask = windowSize - 1;
+        this.maxChain = maxChain;
+        this.niceLength = niceLength;
+        this.prev = new int[windowSize];
+    }
+
+    // positions are absolute indexes into data, which may be a heap or a mapped buffer
+    public void reset(ByteBuffer data) {
+        this.data = data;
+        Arrays.fill(head, -1);
+        undoCount = -1;
+    }
+
+    // swaps the buffer but keeps the chains, for data that agrees with the old one at every inserted position
+    public void setData(ByteBuffer data) {
+        this.data = data;
+    }
+
+    // records the inserts from here on, so rollback() can take them out again
+    public void mark() {
+        undoCount = 0;
+    }
+
+    // restores the chains as they were at mark(); false if there were too many inserts to record,
+    // in which case the finder has to be reset
+    public boolean rollback() {
+        int count = undoCount;
+        undoCount = -1;
+        if (count > MAX_UNDO) {
+            return false;
+        }
+        for (int i = 3 * count - 3; i >= 0; i -= 3) {
+            int hash = undo[i];
+            int position = head[hash];
+            head[hash] = undo[i + 1];
+            prev[position & windowMask] = undo[i + 2];
+        }
+        return true;
+    }
+
+    // the three bytes starting at position must be available
+    public void insert(int position) {
+        int hash = hash(position);
+        if (undoCount >= 0 && undoCount++ < MAX_UNDO) {
+            record(hash, position);
+        }
+        prev[position & windowMask] = head[hash];
+        head[hash] = position;
+    }
+
+    private void record(int hash, int position) {
+        int i = 3 * (undoCount - 1);
+        if (i == undo.length) {
+            undo = Arrays.copyOf(undo, Math.max(3 * 1024, 2 * undo.length));
+        }
+        undo[i] = hash;
+        undo[i + 1] = head[hash];
+        undo[i + 2] = prev[position & windowMask];
+    }
+
+    // returns the longest match length (0 if shorter than MIN_MATCH) of at most maxLength bytes
+    public int findMatch(int position, int maxLength) {
+        if (maxLength < MIN_MATCH) {
+            return 0;
+        }
+        ByteBuffer data = this.data;
+        int minPosition = Math.max(position - windowSize, -1);
+        int bestLength = MIN_MATCH - 1;
+        int chain = maxChain;
+        int candidate = head[hash(position)];
+
+        while (candidate > minPosition && chain-- > 0) {
+            if (data.get(candidate + bestLength) == data.get(position + bestLength)) {
+                int length = 0;
+                while (length < maxLength && data.get(candidate + length) == data.get(position + length)) {
+                    length++;
+                }
+                if (length > bestLength) {
+                    bestLength = length;
+                    matchOffset = position - candidate;
+                    if (length >= niceLength || length == maxLength) {
+                        break;
+                    }
+                }
+            }
+            int next = prev[candidate & windowMask];
+            if (next >= candidate) {
+                break;
+            }
+            candidate = next;
+        }
+        return bestLength >= MIN_MATCH ? bestLength : 0;
+    }
+
+    // every match along the chain that is longer than the ones before it, at most maxLength bytes:
+    // lengths[i] and offsets[i] for i below the returned count, lengths ascending and offsets the nearest
+    // reaching each length; arrays of maxLength - MIN_MATCH + 1 entries hold any result
+    public int findMatches(int position, int maxLength, int[] lengths, int[] offsets) {
+        if (maxLength < MIN_MATCH) {
+            return 0;
+        }
+        ByteBuffer data = this.data;
+        int minPosition = Math.max(position - windowSize, -1);
+        int bestLength = MIN_MATCH - 1;
+        int count = 0;
+        int chain = maxChain;
+        int candidate = head[hash(position)];
+
+        while (candidate > minPosition && chain-- > 0) {
+            if (data.get(candidate + bestLength) == data.get(position + bestLength)) {
+                int length = 0;
+                while (length < maxLength && data.get(candidate + length) == data.get(position + length)) {
+                    length++;
+                }
+                if (length > bestLength) {
+                    bestLength = length;
+                    lengths[count] = length;
+                    offsets[count++] = position - candidate;
+                    if (length >= niceLength || length == maxLength) {
+                        break;
+                    }
+                }
+            }
+            int next = prev[candidate & windowMask];
+            if (next >= candidate) {
+                break;
+            }
+            candidate = next;
+        }
+        return count;
+    }
+
+    public int getMatchOffset() {
+        return matchOffset;
+    }
+
+    private int hash(int position) {
+        int key = (data.get(position) & 0xFF) << 16 | (data.get(position + 1) & 0xFF) << 8 | (data.get(position + 2) & 0xFF);
+        return (key * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.util;
+
+import org.example.models.FrequencyTable;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class Histogram {
+    // incrementing the same counter back to back stalls on the previous store, so
+    // consecutive bytes go to separate tables that are summed at the end
+    private static final int LANES = 4;
+    // int counters are flushed into the table before they could overflow
+    private static final int MAX_RUN = 1 << 28;
+    private static final int SCRATCH_SIZE = 1 << 16;
+
+    public static void count(byte[] data, int offset, int length, FrequencyTable table) {
+        int[] lanes = new int[LANES * 256];
+        for (int start = offset, end = offset + length, n; start < end; start += n) {
+            n = Math.min(MAX_RUN, end - start);
+            countRun(data, start, start + n, lanes);
+            flush(lanes, table);
+        }
+    }
+
+    // counts the bytes between position and limit, leaving the buffer's position unchanged
+    public static void count(ByteBuffer data, FrequencyTable table) {
+        if (data.hasArray()) {
+            count(data.array(), data.arrayOffset() + data.position(), data.remaining(), table);
+            return;
+        }
+        // direct and mapped buffers are copied through a small array, which keeps the counting loop on byte[]
+        int[] lanes = new int[LANES * 256];
+        byte[] scratch = new byte[SCRATCH_SIZE];
+        long pending = 0;
+        for (int start = data.position(), limit = data.limit(), n; start < limit; start += n) {
+            n = Math.min(SCRATCH_SIZE, limit - start);
+            data.get(start, scratch, 0, n);
+            countRun(scratch, 0, n, lanes);
+            pending += n;
+            if (pending >= MAX_RUN) {
+                flush(lanes, table);
+                pending = 0;
+            }
+        }
+        flush(lanes, table);
+    }
+
+    private static void countRun(byte[] data, int start, int end, int[] lanes) {
+        int i = start;
+        for (int bulkEnd = end - 7; i < bulkEnd; i += 8) {
+            lanes[data[i] & 0xFF]++;
+            lanes[256 + (data[i + 1] & 0xFF)]++;
+            lanes[512 + (data[i + 2] & 0xFF)]++;
+            lanes[768 + (data[i + 3] & 0xFF)]++;
+            lanes[data[i + 4] & 0xFF]++;
+            lanes[256 + (data[i + 5] & 0xFF)]++;
+            lanes[512 + (data[i + 6] & 0xFF)]++;
+            lanes[768 + (data[i + 7] & 0xFF)]++;
+        }
+        for (; i < end; i++) {
+            lanes[data[i] & 0xFF]++;
+        }
+    }
+
+    private static void flush(int[] lanes, FrequencyTable table) {
+        for (int symbol = 0; symbol < 256; symbol++) {
+            long sum = 0;
+            for (int lane = 0; lane < LANES; lane++) {
+                sum += lanes[lane * 256 + symbol];
+            }
+            table.add(symbol, sum);
+        }
+        Arrays.fill(lanes, 0);
+    }
+}
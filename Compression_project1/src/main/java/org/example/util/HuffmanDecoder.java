@@ -0,0 +1,114 @@
+package org.example.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class HuffmanDecoder {
+    public static final int MAX_CODE_LENGTH = 24;
+    private static final int PRIMARY_BITS = 11;
+    private static final int LINK = 0x80000000;
+
+    // leaf entry: symbol << 8 | code length
+    // link entry: LINK | sub-table offset << 8 | sub-table index bits
+    private int[] table = new int[0];
+    private int primaryBits;
+
+    public HuffmanDecoder(int[] codes, byte[] lengths) throws IOException {
+        rebuild(codes, lengths);
+    }
+
+    // replaces the code, reusing the table when it is large enough
+    public final void rebuild(int[] codes, byte[] lengths) throws IOException {
+        int maxLength = CanonicalCode.maxLength(lengths);
+        if (maxLength == 0) {
+            throw new IOException("Empty code table");
+        }
+        if (maxLength > MAX_CODE_LENGTH) {
+            throw new IOException("Code length exceeds limit: " + maxLength);
+        }
+        // a corrupt header can describe more codes than fit, or codes longer than their lengths allow;
+        // either would index past the table below
+        long kraft = 0;
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            int length = lengths[symbol];
+            if (length < 0 || (length > 0 && codes[symbol] >>> length != 0)) {
+                throw new IOException("Invalid code table");
+            }
+            if (length > 0) {
+                kraft += 1L << (MAX_CODE_LENGTH - length);
+            }
+        }
+        if (kraft > 1L << MAX_CODE_LENGTH) {
+            throw new IOException("Invalid code table");
+        }
+        primaryBits = Math.min(PRIMARY_BITS, maxLength);
+
+        int primarySize = 1 << primaryBits;
+        int[] subBits = new int[primarySize];
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            int extra = lengths[symbol] - primaryBits;
+            if (extra > 0) {
+                int prefix = codes[symbol] >>> extra;
+                subBits[prefix] = Math.max(subBits[prefix], extra);
+            }
+        }
+
+        int size = primarySize;
+        for (int bits : subBits) {
+            if (bits > 0) {
+                size += 1 << bits;
+            }
+        }
+        if (table.length < size) {
+            table = new int[size];
+        } else {
+            Arrays.fill(table, 0, size, 0);
+        }
+
+        int offset = primarySize;
+        for (int prefix = 0; prefix < primarySize; prefix++) {
+            if (subBits[prefix] > 0) {
+                table[prefix] = LINK | (offset << 8) | subBits[prefix];
+                offset += 1 << subBits[prefix];
+            }
+        }
+
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            int length = lengths[symbol];
+            if (length == 0) {
+                continue;
+            }
+            int entry = (symbol << 8) | length;
+            int extra = length - primaryBits;
+            if (extra <= 0) {
+                int start = codes[symbol] << -extra;
+                Arrays.fill(table, start, start + (1 << -extra), entry);
+            } else {
+                int link = table[codes[symbol] >>> extra];
+                int base = (link >>> 8) & 0x7FFFFF;
+                int bits = link & 0xFF;
+                int start = base + ((codes[symbol] & ((1 << extra) - 1)) << (bits - extra));
+                Arrays.fill(table, start, start + (1 << (bits - extra)), entry);
+            }
+        }
+    }
+
+    public static HuffmanDecoder canonical(byte[] lengths) throws IOException {
+        return new HuffmanDecoder(CanonicalCode.assignCodes(lengths), lengths);
+    }
+
+    public int decode(BitReader in) throws IOException {
+        int entry = table[in.peekBits(primaryBits)];
+        if (entry < 0) {
+            int bits = entry & 0xFF;
+            int index = in.peekBits(primaryBits + bits) & ((1 << bits) - 1);
+            entry = table[((entry >>> 8) & 0x7FFFFF) + index];
+        }
+        int length = entry & 0xFF;
+        if (length == 0) {
+            throw new IOException("Invalid code in compressed data");
+        }
+        in.skipBits(length);
+        return entry >>> 8;
+    }
+}
@@ -0,0 +1,65 @@
+package org.example.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// read-only view of a file as mapped segments, so files beyond 2 GB can be processed without heap copies.
+// The segments are MappedByteBuffers from FileChannel.map, as every consumer reads int-indexed ByteBuffers;
+// a MemorySegment mapping (final since JDK 22, the level this builds for) would only be sliced back into them
+public class MappedFile implements Closeable {
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    private final FileChannel channel;
+    private final long size;
+    private final int segmentSize;
+
+    public MappedFile(Path path) throws IOException {
+        this(path, DEFAULT_SEGMENT_SIZE);
+    }
+
+    // smaller segments are for callers that bound the address space they map at a time, and for checking
+    // the code that walks segments without needing files over a gigabyte
+    public MappedFile(Path path, int segmentSize) throws IOException {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Invalid segment size: " + segmentSize);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.segmentSize = segmentSize;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public int segmentCount() {
+        return (int) ((size + segmentSize - 1) / segmentSize);
+    }
+
+    public MappedByteBuffer segment(int index) throws IOException {
+        long position = (long) index * segmentSize;
+        return map(position, (int) Math.min(segmentSize, size - position));
+    }
+
+    public MappedByteBuffer map(long position, int length) throws IOException {
+        if (position < 0 || length < 0 || position + length > size) {
+            throw new IndexOutOfBoundsException("Mapping [" + position + ", " + (position + length)
+                    + ") outside file of " + size + " bytes");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+
+    // mapped buffers remain readable after close until they are garbage collected
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,65 @@
+package org.example.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+// decode table over the next TABLE_BITS bits of a stream whose codes are at most TABLE_BITS long; an entry
+// holds every code that fits completely in those bits, up to two symbols, so short codes come out in pairs
+public class MultiSymbolTable {
+    public static final int TABLE_BITS = 11;
+
+    // entry: INVALID flag | symbol count << 24 | first code length << 20 | bits consumed << 16
+    //        | second symbol << 8 | first symbol
+    public static final int INVALID = 0x80000000;
+    private static final int SIZE = 1 << TABLE_BITS;
+
+    private final int[] single = new int[SIZE];
+    private final int[] entries = new int[SIZE];
+
+    public int[] entries() {
+        return entries;
+    }
+
+    public void rebuild(byte[] lengths) throws IOException {
+        int maxLength = CanonicalCode.maxLength(lengths);
+        if (maxLength == 0) {
+            throw new IOException("Empty code table");
+        }
+        if (maxLength > TABLE_BITS) {
+            throw new IOException("Code length exceeds limit: " + maxLength);
+        }
+        int[] codes = CanonicalCode.assignCodes(lengths);
+
+        // single: symbol << 8 | code length, zero where no code starts
+        Arrays.fill(single, 0);
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            int length = lengths[symbol];
+            if (length > 0) {
+                if (codes[symbol] >>> length != 0) {
+                    throw new IOException("Invalid code table");
+                }
+                int start = codes[symbol] << (TABLE_BITS - length);
+                Arrays.fill(single, start, start + (1 << (TABLE_BITS - length)), (symbol << 8) | length);
+            }
+        }
+
+        for (int index = 0; index < SIZE; index++) {
+            int first = single[index];
+            if (first == 0) {
+                // consumes a full table's worth of bits, so a corrupt stream still runs to its end
+                entries[index] = INVALID | 1 << 24 | TABLE_BITS << 20 | TABLE_BITS << 16;
+                continue;
+            }
+            int firstLength = first & 0xFF;
+            // the bits after the first code, zero-padded; a second code is only taken when it ends within them
+            int second = single[(index << firstLength) & (SIZE - 1)];
+            int secondLength = second & 0xFF;
+            if (second != 0 && firstLength + secondLength <= TABLE_BITS) {
+                entries[index] = 2 << 24 | firstLength << 20 | (firstLength + secondLength) << 16
+                        | (second >>> 8) << 8 | first >>> 8;
+            } else {
+                entries[index] = 1 << 24 | firstLength << 20 | firstLength << 16 | first >>> 8;
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.example.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+public class SlidingWindow {
+    private final OutputStream out;
+    private final byte[] ring;
+    private final int mask;
+    private long position;
+    private long flushed;
+
+    public SlidingWindow(OutputStream out, int windowSize) {
+        if (Integer.bitCount(windowSize) != 1) {
+            throw new IllegalArgumentException("Window size must be a power of two: " + windowSize);
+        }
+        this.out = out;
+        this.ring = new byte[windowSize];
+        this.mask = windowSize - 1;
+    }
+
+    public void write(int b) throws IOException {
+        ring[(int) (position++ & mask)] = (byte) b;
+        if ((position & mask) == 0) {
+            flush();
+        }
+    }
+
+    public void write(byte[] b, int offset, int length) throws IOException {
+        while (length > 0) {
+            int at = (int) (position & mask);
+            int run = Math.min(length, ring.length - at);
+            System.arraycopy(b, offset, ring, at, run);
+            position += run;
+            offset += run;
+            length -= run;
+            if ((position & mask) == 0) {
+                flush();
+            }
+        }
+    }
+
+    // copies length bytes starting offset bytes back; the ranges may overlap when offset < length
+    public void copy(int offset, int length) throws IOException {
+        if (offset <= 0 || offset > ring.length || offset > position) {
+            throw new IOException("Invalid match offset: " + offset);
+        }
+        while (length > 0) {
+            int dst = (int) (position & mask);
+            int src = (dst - offset) & mask;
+            int run = Math.min(length, ring.length - Math.max(dst, src));
+            if (offset == 1) {
+                Arrays.fill(ring, dst, dst + run, ring[src]);
+            } else {
+                run = Math.min(run, offset);
+                System.arraycopy(ring, src, ring, dst, run);
+            }
+            position += run;
+            length -= run;
+            if ((position & mask) == 0) {
+                flush();
+            }
+        }
+    }
+
+    public long size() {
+        return position;
+    }
+
+    public void flush() throws IOException {
+        int start = (int) (flushed & mask);
+        int count = (int) (position - flushed);
+        if (count > 0) {
+            out.write(ring, start, count);
+            flushed = position;
+        }
+    }
+}
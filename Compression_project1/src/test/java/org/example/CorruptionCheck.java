@@ -0,0 +1,146 @@
+package org.example;
+
+import org.example.codec.BlockContainer;
+import org.example.codec.Codec;
+import org.example.codec.Codecs;
+import org.example.codec.CompressorOutputStream;
+import org.example.codec.PipelinedContainer;
+import org.example.codec.SeekableContainer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+// flips every bit of compressed data, one at a time: in every file format, in the block stream of every
+// codec and in both block containers; decompression must either fail with an IOException or, where the
+// bit is padding, still give back the original
+public class CorruptionCheck {
+    private static final int SAMPLE_SIZE = 3000;
+    // small blocks, so streams and containers hold several
+    private static final int BLOCK_SIZE = 1024;
+    private static final List<Codec> CONTAINER_CODECS = List.of(Codecs.HUFFMAN, Codecs.LZ77);
+
+    interface FileOperation {
+        void run(String input, String output) throws IOException;
+    }
+
+    interface Decoder {
+        byte[] decode(byte[] compressed) throws IOException;
+    }
+
+    private static byte[] original;
+    private static int failures;
+
+    public static void main(String[] args) throws IOException {
+        Path sample = Path.of(args.length > 0 ? args[0] : "sample.txt");
+        original = Files.readAllBytes(sample);
+        original = Arrays.copyOf(original, Math.min(original.length, SAMPLE_SIZE));
+
+        Map<String, FileOperation[]> formats = new LinkedHashMap<>();
+        formats.put("huff", new FileOperation[]{HuffmanAlgorithm::compress, HuffmanAlgorithm::decompress});
+        formats.put("sf", new FileOperation[]{ShannonFanoAlgorithm::compress, ShannonFanoAlgorithm::decompress});
+        formats.put("lz77", new FileOperation[]{LZ77Algorithm::compress, LZ77Algorithm::decompress});
+        formats.put("lzw", new FileOperation[]{LZWAlgorithm::compress, LZWAlgorithm::decompress});
+        formats.put("defl", new FileOperation[]{DeflateAlgorithm::compress, DeflateAlgorithm::decompress});
+        formats.put("ahuff", new FileOperation[]{AdaptiveHuffmanAlgorithm::compress, AdaptiveHuffmanAlgorithm::decompress});
+        formats.put("fse", new FileOperation[]{FseAlgorithm::compress, FseAlgorithm::decompress});
+        formats.put("rc", new FileOperation[]{RangeCoderAlgorithm::compress, RangeCoderAlgorithm::decompress});
+
+        Path dir = Files.createTempDirectory("corruption");
+        try {
+            Path input = Files.write(dir.resolve("input"), original);
+            Path compressed = dir.resolve("compressed");
+            Path damaged = dir.resolve("damaged");
+            Path output = dir.resolve("output");
+
+            for (Map.Entry<String, FileOperation[]> format : formats.entrySet()) {
+                format.getValue()[0].run(input.toString(), compressed.toString());
+                flipAll(format.getKey(), Files.readAllBytes(compressed), bytes -> {
+                    Files.write(damaged, bytes);
+                    format.getValue()[1].run(damaged.toString(), output.toString());
+                    return Files.readAllBytes(output);
+                });
+            }
+
+            for (Codec codec : Codecs.all()) {
+                ByteArrayOutputStream stream = new ByteArrayOutputStream();
+                try (OutputStream out = new CompressorOutputStream(stream, codec, BLOCK_SIZE)) {
+                    out.write(original);
+                }
+                flipAll("tok " + codec.getName(), stream.toByteArray(), bytes -> {
+                    try (InputStream in = codec.newInputStream(new ByteArrayInputStream(bytes))) {
+                        return in.readAllBytes();
+                    }
+                });
+            }
+
+            for (Codec codec : CONTAINER_CODECS) {
+                BlockContainer.compress(input, compressed, codec, BLOCK_SIZE, 2);
+                byte[] container = Files.readAllBytes(compressed);
+                flipAll("kontejner " + codec.getName(), container, bytes -> {
+                    Files.write(damaged, bytes);
+                    BlockContainer.decompress(damaged, output, 2);
+                    return Files.readAllBytes(output);
+                });
+                flipAll("nasumicno " + codec.getName(), container, bytes -> {
+                    Files.write(damaged, bytes);
+                    try (SeekableContainer seekable = SeekableContainer.open(damaged)) {
+                        return seekable.readAt(0, (int) seekable.size());
+                    }
+                });
+                PipelinedContainer.compress(input, compressed, codec, BLOCK_SIZE, 2);
+                flipAll("protocni " + codec.getName(), Files.readAllBytes(compressed), bytes -> {
+                    Files.write(damaged, bytes);
+                    PipelinedContainer.decompress(damaged, output, 2);
+                    return Files.readAllBytes(output);
+                });
+            }
+
+            if (failures > 0) {
+                throw new AssertionError(failures + " flipped bits were not detected");
+            }
+            System.out.println("CorruptionCheck: OK");
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    private static void flipAll(String name, byte[] bytes, Decoder decoder) {
+        int detected = 0, unchanged = 0, wrong = 0;
+        for (int bit = 0; bit < 8 * bytes.length; bit++) {
+            bytes[bit >> 3] ^= (byte) (1 << (bit & 7));
+            try {
+                if (Arrays.equals(original, decoder.decode(bytes))) {
+                    unchanged++;
+                } else {
+                    wrong++;
+                    System.out.printf("  %s: bit %d daje pogresan izlaz bez greske%n", name, bit);
+                }
+            } catch (IOException e) {
+                detected++;
+            } catch (RuntimeException e) {
+                wrong++;
+                System.out.printf("  %s: bit %d baca %s%n", name, bit, e);
+            } finally {
+                bytes[bit >> 3] ^= (byte) (1 << (bit & 7));
+            }
+        }
+        System.out.printf("%-26s %6d bitova: IOException %d, nepromenjeno %d, neotkriveno %d%n",
+                name, 8 * bytes.length, detected, unchanged, wrong);
+        failures += wrong;
+    }
+}
@@ -0,0 +1,129 @@
+package org.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// huffman-x4 blocks: round trips for every length up to a few hundred bytes, so each stream ends in the
+// main loop, in the tail or empty, and for skewed data whose codes hit the length limit; damaged blocks
+// must fail with an IOException or decode to something, never throw anything else; last, sizes and
+// decode speed against the single-stream Huffman block on 1 MB of repeated text, for information only
+public class InterleavedHuffmanCheck {
+    private static final int FUZZ_ROUNDS = 3000;
+    private static final int SPEED_SIZE = 1 << 20;
+    private static final int SPEED_ROUNDS = 50;
+
+    public static void main(String[] args) throws IOException {
+        byte[] sample = Files.readAllBytes(Path.of(args.length > 0 ? args[0] : "sample.txt"));
+        Random random = new Random(1);
+        InterleavedHuffmanAlgorithm.Context context = new InterleavedHuffmanAlgorithm.Context();
+
+        List<byte[]> inputs = new ArrayList<>();
+        for (int length = 0; length < 600; length++) {
+            byte[] data = new byte[length];
+            for (int i = 0; i < length; i++) {
+                data[i] = (byte) (random.nextInt(3) == 0 ? random.nextInt(256) : 'a' + random.nextInt(4));
+            }
+            inputs.add(data);
+        }
+        for (int length = 1; length < 100; length += 7) {
+            byte[] data = new byte[length];
+            Arrays.fill(data, (byte) 7);
+            inputs.add(data);
+        }
+        // symbol k about twice as frequent as symbol k + 1, which would need codes far over the limit
+        byte[] skewed = new byte[200_000];
+        for (int i = 0; i < skewed.length; i++) {
+            skewed[i] = (byte) Math.min(255, Long.numberOfTrailingZeros(random.nextLong() | Long.MIN_VALUE));
+        }
+        inputs.add(skewed);
+        byte[] noise = new byte[300_000];
+        random.nextBytes(noise);
+        inputs.add(noise);
+        inputs.add(sample);
+
+        for (byte[] data : inputs) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            context.encodeBlock(data, 0, data.length, out);
+            byte[] encoded = out.toByteArray();
+            // both blocks sit away from the array edges, so reads or writes past them would show
+            byte[] src = new byte[encoded.length + 10];
+            System.arraycopy(encoded, 0, src, 5, encoded.length);
+            byte[] dst = new byte[data.length + 6];
+            context.decodeBlock(src, 5, encoded.length, dst, 3, data.length);
+            check(Arrays.equals(dst, 3, 3 + data.length, data, 0, data.length), "round trip of " + data.length + " bytes");
+            for (int i = 0; i < 3; i++) {
+                check(dst[i] == 0 && dst[dst.length - 1 - i] == 0, "write outside the block of " + data.length + " bytes");
+            }
+        }
+
+        byte[] text = repeat(sample, 100_000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        context.encodeBlock(text, 0, text.length, out);
+        byte[] encoded = out.toByteArray();
+        int detected = 0, decoded = 0;
+        for (int round = 0; round < FUZZ_ROUNDS; round++) {
+            byte[] damaged = encoded.clone();
+            damaged[random.nextInt(damaged.length)] ^= (byte) (1 << random.nextInt(8));
+            if (round % 3 == 0) {
+                damaged = Arrays.copyOf(damaged, random.nextInt(damaged.length));
+            }
+            try {
+                context.decodeBlock(damaged, 0, damaged.length, new byte[text.length], 0, text.length);
+                decoded++;
+            } catch (IOException e) {
+                detected++;
+            }
+        }
+
+        byte[] large = repeat(sample, SPEED_SIZE);
+        HuffmanAlgorithm.Context single = new HuffmanAlgorithm.Context();
+        out.reset();
+        single.encodeBlock(large, 0, large.length, out);
+        byte[] singleBlock = out.toByteArray();
+        out.reset();
+        context.encodeBlock(large, 0, large.length, out);
+        byte[] interleavedBlock = out.toByteArray();
+        byte[] result = new byte[large.length];
+        double singleSpeed = 0, interleavedSpeed = 0;
+        // the best of several rounds, after the first ones warmed up the JIT
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < SPEED_ROUNDS; i++) {
+                single.decodeBlock(singleBlock, 0, singleBlock.length, result, 0, large.length);
+            }
+            long middle = System.nanoTime();
+            for (int i = 0; i < SPEED_ROUNDS; i++) {
+                context.decodeBlock(interleavedBlock, 0, interleavedBlock.length, result, 0, large.length);
+            }
+            long end = System.nanoTime();
+            singleSpeed = Math.max(singleSpeed, SPEED_ROUNDS * 1e3 * large.length / (middle - start));
+            interleavedSpeed = Math.max(interleavedSpeed, SPEED_ROUNDS * 1e3 * large.length / (end - middle));
+        }
+        check(Arrays.equals(result, large), "round trip of the speed input");
+
+        System.out.printf("Ostecenih blokova   : %d IOException, %d dekodirano bez greske%n", detected, decoded);
+        System.out.printf("Velicina (1 MB)     : huffman %d, huffman-x4 %d bajtova%n", singleBlock.length, interleavedBlock.length);
+        System.out.printf("Dekodiranje         : huffman %.0f MB/s, huffman-x4 %.0f MB/s%n", singleSpeed, interleavedSpeed);
+        System.out.println("InterleavedHuffmanCheck: OK");
+    }
+
+    private static byte[] repeat(byte[] data, int length) {
+        byte[] repeated = new byte[length];
+        for (int i = 0; i < length; i++) {
+            repeated[i] = data[i % data.length];
+        }
+        return repeated;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
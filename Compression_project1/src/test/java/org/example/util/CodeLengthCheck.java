@@ -0,0 +1,161 @@
+package org.example.util;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+// CodeLengthBuilder.huffman against references: unlimited lengths cost the same as a priority-queue
+// Huffman code, and limited lengths stay within the limit, satisfy Kraft and, on alphabets small enough
+// to enumerate, cost no more than the best assignment found by brute force
+public class CodeLengthCheck {
+    private static final int ALPHABETS = 2000;
+    private static final int UNLIMITED = 60;
+
+    public static void main(String[] args) {
+        Random random = new Random(1);
+        for (int round = 0; round < ALPHABETS; round++) {
+            long[] frequencies = alphabet(random, 2 + random.nextInt(300), round % 2 == 0);
+            byte[] lengths = CodeLengthBuilder.huffman(frequencies, UNLIMITED);
+            check(cost(frequencies, lengths) == huffmanCost(frequencies), "cost differs from Huffman, round " + round);
+            check(kraftIsOne(lengths), "Kraft sum is not one, round " + round);
+
+            int used = used(frequencies);
+            int limit = Math.max(32 - Integer.numberOfLeadingZeros(used - 1), maxLength(lengths) - 1 - random.nextInt(4));
+            byte[] limited = CodeLengthBuilder.huffman(frequencies, limit);
+            check(maxLength(limited) <= limit, "limit " + limit + " exceeded, round " + round);
+            check(kraftIsOne(limited), "Kraft sum of limited lengths is not one, round " + round);
+            check(cost(frequencies, limited) >= cost(frequencies, lengths), "limited code beats Huffman, round " + round);
+        }
+
+        for (int round = 0; round < ALPHABETS; round++) {
+            long[] frequencies = alphabet(random, 2 + random.nextInt(6), true);
+            int used = used(frequencies);
+            int limit = Math.max(32 - Integer.numberOfLeadingZeros(used - 1), 1 + random.nextInt(4));
+            byte[] limited = CodeLengthBuilder.huffman(frequencies, limit);
+            check(maxLength(limited) <= limit, "limit " + limit + " exceeded, small round " + round);
+            check(cost(frequencies, limited) == bruteForceCost(frequencies, limit),
+                    "limited code is not optimal, small round " + round);
+        }
+
+        check(CodeLengthBuilder.huffman(new long[]{0, 5, 0}, 15)[1] == 1, "a lone symbol needs length one");
+        check(maxLength(CodeLengthBuilder.huffman(new long[3], 15)) == 0, "an empty alphabet needs no codes");
+
+        long[] large = alphabet(random, 1 << 16, false);
+        long start = System.nanoTime();
+        byte[] lengths = CodeLengthBuilder.huffman(large, 24);
+        long nanos = System.nanoTime() - start;
+        check(maxLength(lengths) <= 24 && kraftIsOne(lengths), "65,536-symbol alphabet");
+        System.out.printf("CodeLengthCheck: OK (65,536 simbola za %.1f ms)%n", nanos / 1e6);
+    }
+
+    // some symbols missing; skewed alphabets have weights growing geometrically, which makes deep trees
+    private static long[] alphabet(Random random, int size, boolean skewed) {
+        long[] frequencies = new long[size];
+        long weight = 1;
+        for (int i = 0; i < size; i++) {
+            if (random.nextInt(8) == 0) {
+                continue;
+            }
+            if (skewed) {
+                weight = Math.min(weight + weight / 2 + random.nextInt(3), 1L << 40);
+                frequencies[i] = weight;
+            } else {
+                frequencies[i] = 1 + random.nextInt(random.nextBoolean() ? 10 : 100_000);
+            }
+        }
+        if (used(frequencies) < 2) {
+            frequencies[0] = 1;
+            frequencies[size - 1] = 2;
+        }
+        return frequencies;
+    }
+
+    // the cost of an optimal code is the total weight of the nodes merged while building it
+    private static long huffmanCost(long[] frequencies) {
+        PriorityQueue<Long> queue = new PriorityQueue<>();
+        for (long frequency : frequencies) {
+            if (frequency > 0) {
+                queue.add(frequency);
+            }
+        }
+        long cost = 0;
+        while (queue.size() > 1) {
+            long merged = queue.poll() + queue.poll();
+            cost += merged;
+            queue.add(merged);
+        }
+        return cost;
+    }
+
+    private static long bruteForceCost(long[] frequencies, int limit) {
+        int used = used(frequencies);
+        long[] weights = new long[used];
+        for (int i = 0, k = 0; i < frequencies.length; i++) {
+            if (frequencies[i] > 0) {
+                weights[k++] = frequencies[i];
+            }
+        }
+        return bruteForce(weights, new int[used], 0, limit);
+    }
+
+    private static long bruteForce(long[] weights, int[] lengths, int index, int limit) {
+        if (index == weights.length) {
+            long kraft = 0;
+            long cost = 0;
+            for (int i = 0; i < lengths.length; i++) {
+                kraft += 1L << (limit - lengths[i]);
+                cost += weights[i] * lengths[i];
+            }
+            return kraft <= 1L << limit ? cost : Long.MAX_VALUE;
+        }
+        long best = Long.MAX_VALUE;
+        for (int length = 1; length <= limit; length++) {
+            lengths[index] = length;
+            best = Math.min(best, bruteForce(weights, lengths, index + 1, limit));
+        }
+        return best;
+    }
+
+    private static long cost(long[] frequencies, byte[] lengths) {
+        long cost = 0;
+        for (int i = 0; i < frequencies.length; i++) {
+            check((frequencies[i] > 0) == (lengths[i] > 0), "symbol " + i + " has a code exactly when it occurs");
+            cost += frequencies[i] * lengths[i];
+        }
+        return cost;
+    }
+
+    private static boolean kraftIsOne(byte[] lengths) {
+        int max = maxLength(lengths);
+        long kraft = 0;
+        for (byte length : lengths) {
+            if (length > 0) {
+                kraft += 1L << (max - length);
+            }
+        }
+        return kraft == 1L << max;
+    }
+
+    private static int maxLength(byte[] lengths) {
+        int max = 0;
+        for (byte length : lengths) {
+            max = Math.max(max, length);
+        }
+        return max;
+    }
+
+    private static int used(long[] frequencies) {
+        int used = 0;
+        for (long frequency : frequencies) {
+            if (frequency > 0) {
+                used++;
+            }
+        }
+        return used;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.example.util;
+
+import org.example.models.FrequencyTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// splitting a file into blocks must not depend on where its mapped segments end: with segment sizes that
+// are, and are not, multiples of the block size, every block keeps its file offset and the results match
+// those of the default segment size
+public class MappedFileCheck {
+    private static final int FILE_SIZE = 1_000_003;
+    private static final int[] SEGMENT_SIZES = {4096, 65_537, 100_000, 999_999, MappedFile.DEFAULT_SEGMENT_SIZE};
+    private static final int[] BLOCK_SIZES = {4096, 5000, 65_536, 1 << 20};
+
+    public static void main(String[] args) throws IOException {
+        Path path = Files.createTempFile("mapped", ".bin");
+        try {
+            byte[] data = new byte[FILE_SIZE];
+            Random random = new Random(1);
+            // runs of a few symbols with noise between them, so windows differ in entropy
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) ((i / 10_000) % 3 == 0 ? random.nextInt(256) : 'a' + random.nextInt(4));
+            }
+            Files.write(path, data);
+            File file = path.toFile();
+
+            FrequencyTable expectedFrequency = EntropyCalculator.calculateFrequency(file, 4);
+            for (int segmentSize : SEGMENT_SIZES) {
+                try (MappedFile mappedFile = new MappedFile(path, segmentSize)) {
+                    for (int blockSize : BLOCK_SIZES) {
+                        checkSplit(mappedFile, data, blockSize);
+                    }
+                }
+                check(Arrays.equals(expectedFrequency.toArray(),
+                                EntropyCalculator.calculateFrequency(file, 4, segmentSize).toArray()),
+                        "frequencies differ with segment size " + segmentSize);
+                for (int blockSize : BLOCK_SIZES) {
+                    check(Arrays.equals(EntropyCalculator.calculateWindowEntropy(file, blockSize, 3),
+                                    EntropyCalculator.calculateWindowEntropy(file, blockSize, 3, segmentSize)),
+                            "window entropy differs with segment size " + segmentSize + ", block size " + blockSize);
+                }
+            }
+            System.out.println("MappedFileCheck: OK");
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static void checkSplit(MappedFile mappedFile, byte[] data, int blockSize) throws IOException {
+        List<ByteBuffer> blocks = EntropyCalculator.split(mappedFile, blockSize);
+        check(blocks.size() == (data.length + blockSize - 1) / blockSize,
+                "block count with segment size " + mappedFile.getSegmentSize() + ", block size " + blockSize);
+        for (int k = 0; k < blocks.size(); k++) {
+            ByteBuffer block = blocks.get(k);
+            int start = k * blockSize;
+            int length = Math.min(blockSize, data.length - start);
+            byte[] bytes = new byte[block.remaining()];
+            block.duplicate().get(bytes);
+            check(Arrays.equals(bytes, 0, bytes.length, data, start, start + length),
+                    "block " + k + " with segment size " + mappedFile.getSegmentSize() + ", block size " + blockSize);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}